@@ -0,0 +1,39 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks with the GC profiler always on, so that allocation rates are reported
+ * next to throughput. Accepts the usual JMH command line, e.g. a benchmark name regex.
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        var commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+        new Runner(new OptionsBuilder()
+            .parent(commandLine)
+            .addProfiler(GCProfiler.class)
+            .build())
+            .run();
+    }
+}
@@ -0,0 +1,103 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import ch.execve.hermes.classifier.Rule;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Shared fixtures for the benchmarks. Paths are relative to the runfiles root of `bazel run`. */
+final class BenchmarkSupport {
+    static final Path CONFIG_DIR = Path.of(System.getProperty("hermes.configDir", "tests/config"));
+    static final Path DATA_DIR = Path.of(System.getProperty("hermes.dataDir", "tests/data"));
+    static final Session SESSION = Session.getInstance(new Properties());
+
+    private BenchmarkSupport() {}
+
+    /** Keeps per-message INFO lines out of the benchmark output and off the measured path. */
+    static void quietLogging() {
+        var loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+        loggerContext.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.WARN);
+    }
+
+    static MimeMessage parse(byte[] message) throws MessagingException {
+        return new MimeMessage(SESSION, new ByteArrayInputStream(message));
+    }
+
+    static byte[] testMessage(String name) throws IOException {
+        return Files.readAllBytes(DATA_DIR.resolve(name));
+    }
+
+    /**
+     * Returns {@code patterns} HeaderMatcher expressions spread over From, To and Subject, in the
+     * style of a large spam list.
+     */
+    static List<Rule> largeRules(int patterns) {
+        String[] headers = {"From", "To", "Subject"};
+        List<Rule> rules = new ArrayList<>();
+        for (int h = 0; h < headers.length; h++) {
+            List<String> regexes = new ArrayList<>();
+            for (int i = h; i < patterns; i += headers.length) {
+                regexes.add(headers[h].equals("Subject")
+                    ? ".*[Cc]heap offer " + i + "( now)?.*"
+                    : ".*@spam" + i + "\\.example\\.(com|net)");
+            }
+            rules.add(new Rule(headers[h], regexes));
+        }
+        return rules;
+    }
+
+    /** Writes {@link #largeRules} to a temporary HeaderMatcher rule file. */
+    static Path largeRuleFile(int patterns) throws IOException {
+        Path file = Files.createTempFile("hermes-bench-rules", ".json");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, toJson(largeRules(patterns)));
+        return file;
+    }
+
+    /** Serializes rules by hand, so that benchmarks of cold starts don't load Jackson early. */
+    static String toJson(List<Rule> rules) {
+        var json = new StringBuilder("[\n");
+        for (int r = 0; r < rules.size(); r++) {
+            Rule rule = rules.get(r);
+            json.append("  {\"header\": \"").append(rule.header()).append("\", \"regex\": [\n");
+            for (int i = 0; i < rule.regex().size(); i++) {
+                String escaped = rule.regex().get(i).replace("\\", "\\\\").replace("\"", "\\\"");
+                json.append("    \"").append(escaped).append('"').append(i + 1 < rule.regex().size() ? ",\n" : "\n");
+            }
+            json.append("  ]}").append(r + 1 < rules.size() ? ",\n" : "\n");
+        }
+        return json.append("]\n").toString();
+    }
+
+    static DatabaseLogger temporaryDatabase(boolean async) throws IOException {
+        Path file = Files.createTempFile("hermes-bench", ".db");
+        file.toFile().deleteOnExit();
+        return new DatabaseLogger(
+            file.toString(), async, 256, 50, DatabaseLogger.Partitioning.NONE, 0, new Metrics());
+    }
+}
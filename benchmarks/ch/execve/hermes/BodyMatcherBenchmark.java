@@ -0,0 +1,77 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import ch.execve.hermes.classifier.BodyMatcher;
+import ch.execve.hermes.classifier.BodyRules;
+import ch.execve.hermes.synthetic.SyntheticMessages;
+import jakarta.mail.Message;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of scanning message bodies for phrases that never match, so every text part is read up to
+ * the byte budget. The LARGE profile shows that the attachment adds nothing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BodyMatcherBenchmark {
+    private static final int MESSAGES = 16;
+
+    @Param({"10", "500"})
+    public int phrases;
+
+    @Param({"TYPICAL", "LARGE"})
+    public SyntheticMessages.Profile profile;
+
+    private BodyMatcher matcher;
+    private final Message[] messages = new Message[MESSAGES];
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.quietLogging();
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < phrases; i++) {
+            list.add("unlikely phrase number " + i);
+        }
+        matcher = new BodyMatcher(new BodyRules(list, List.of(), null, null), "benchmark");
+        var generator = new SyntheticMessages(42);
+        for (int i = 0; i < MESSAGES; i++) {
+            messages[i] = BenchmarkSupport.parse(generator.next(profile));
+        }
+    }
+
+    @Benchmark
+    public boolean classify() {
+        return matcher.classify(messages[next++ % MESSAGES]);
+    }
+}
@@ -0,0 +1,68 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of DatabaseLogger.log as seen by the delivery path. In async mode this measures the
+ * enqueue, and blocks only once the writer falls behind.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DatabaseLoggerBenchmark {
+    @Param({"false", "true"})
+    public boolean async;
+
+    private DatabaseLogger dbLogger;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.quietLogging();
+        dbLogger = BenchmarkSupport.temporaryDatabase(async);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dbLogger.close();
+    }
+
+    @Benchmark
+    public void log() {
+        dbLogger.log(
+            "<0123456789abcdef@example.com>",
+            "<sender@example.com>",
+            "Sender <sender@example.com>",
+            "A fairly ordinary subject line",
+            "ch.execve.hermes.classifier.HeaderMatcher",
+            "INBOX");
+    }
+}
@@ -0,0 +1,82 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import jakarta.mail.internet.MimeMessage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Dispatcher.dispatch end to end over the test corpus, with the test configuration. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DispatcherBenchmark {
+    private static final List<String> CORPUS = List.of(
+        "alpacas_1.msg", "alpacas_2.msg", "spam_bad_1.msg", "spam_bad_2.msg", "spam_bad_3.msg",
+        "spam_bad_4.msg", "spam_good_1.msg", "spam_good_2.msg", "spam_good_3.msg", "spam_good_4.msg");
+
+    @Param({"false", "true"})
+    public boolean asyncLog;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    @Param({"0", "10000"})
+    public long cacheSize;
+
+    private DatabaseLogger dbLogger;
+    private Dispatcher dispatcher;
+    private MimeMessage[] messages;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.quietLogging();
+        dbLogger = BenchmarkSupport.temporaryDatabase(asyncLog);
+        var maildirDelivery = new MaildirDelivery("", MaildirDelivery.FsyncPolicy.NONE, new Metrics());
+        dispatcher = new Dispatcher(
+            new ClassifierLoader(BenchmarkSupport.CONFIG_DIR.toString()), parallel, cacheSize, 1000, () -> dbLogger,
+            new DuplicateDetector(0, "", 1000, maildirDelivery, new Metrics()), 1, new Metrics());
+        messages = new MimeMessage[CORPUS.size()];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = BenchmarkSupport.parse(BenchmarkSupport.testMessage(CORPUS.get(i)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        dbLogger.close();
+    }
+
+    @Benchmark
+    public String dispatch() {
+        return dispatcher.dispatch(messages[next++ % messages.length]).folder();
+    }
+}
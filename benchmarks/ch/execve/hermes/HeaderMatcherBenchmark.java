@@ -0,0 +1,75 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import ch.execve.hermes.classifier.HeaderMatcher;
+import ch.execve.hermes.classifier.ParsedMessage;
+import ch.execve.hermes.synthetic.SyntheticMessages;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Cost of evaluating one rule file against a message, with and without pre-decoded headers. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HeaderMatcherBenchmark {
+    private static final int MESSAGES = 64;
+
+    /** "small" is tests/config/spam.json; the others are generated lists of that many patterns. */
+    @Param({"small", "500", "5000"})
+    public String rules;
+
+    private HeaderMatcher matcher;
+    private final ParsedMessage[] messages = new ParsedMessage[MESSAGES];
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.quietLogging();
+        Path rulesFile = rules.equals("small")
+            ? BenchmarkSupport.CONFIG_DIR.resolve("spam.json")
+            : BenchmarkSupport.largeRuleFile(Integer.parseInt(rules));
+        matcher = new HeaderMatcher(rulesFile.toString());
+        var generator = new SyntheticMessages(42);
+        for (int i = 0; i < MESSAGES; i++) {
+            messages[i] = ParsedMessage.of(BenchmarkSupport.parse(generator.next(SyntheticMessages.Profile.TYPICAL)));
+        }
+    }
+
+    @Benchmark
+    public boolean classifyParsed() {
+        return matcher.classify(messages[next++ % MESSAGES]);
+    }
+
+    /** Includes reading and decoding the headers, as a classifier without the parsed view would. */
+    @Benchmark
+    public boolean classifyMessage() {
+        return matcher.classify(messages[next++ % MESSAGES].message());
+    }
+}
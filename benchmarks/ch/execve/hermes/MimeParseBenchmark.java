@@ -0,0 +1,63 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import ch.execve.hermes.classifier.ParsedMessage;
+import ch.execve.hermes.synthetic.SyntheticMessages;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Parsing raw bytes into a MimeMessage and the parsed header view. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MimeParseBenchmark {
+    /** A file from tests/data, or "synthetic-" followed by a SyntheticMessages profile. */
+    @Param({"empty.msg", "alpacas_1.msg", "spam_bad_3.msg", "synthetic-TYPICAL", "synthetic-LARGE"})
+    public String source;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.quietLogging();
+        bytes = source.startsWith("synthetic-")
+            ? new SyntheticMessages(7).next(SyntheticMessages.Profile.valueOf(source.substring("synthetic-".length())))
+            : BenchmarkSupport.testMessage(source);
+    }
+
+    @Benchmark
+    public Object parse() throws Exception {
+        return BenchmarkSupport.parse(bytes);
+    }
+
+    @Benchmark
+    public ParsedMessage parseAndDecodeHeaders() throws Exception {
+        return ParsedMessage.of(BenchmarkSupport.parse(bytes));
+    }
+}
@@ -0,0 +1,78 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import ch.execve.hermes.classifier.ParsedMessage;
+import ch.execve.hermes.classifier.SenderListRules;
+import ch.execve.hermes.classifier.SenderMatcher;
+import ch.execve.hermes.synthetic.SyntheticMessages;
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Cost of looking up a message's senders in a large address and domain list that they are not on. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SenderMatcherBenchmark {
+    private static final int MESSAGES = 64;
+
+    @Param({"1000", "500000"})
+    public int entries;
+
+    private SenderMatcher matcher;
+    private final ParsedMessage[] messages = new ParsedMessage[MESSAGES];
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.quietLogging();
+        Path dir = Files.createTempDirectory("hermes-bench-senders");
+        dir.toFile().deleteOnExit();
+        Path list = dir.resolve("senders.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(list)) {
+            for (int i = 0; i < entries; i++) {
+                writer.write(i % 2 == 0 ? "sender" + i + "@blocked.example\n" : "domain" + i + ".example\n");
+            }
+        }
+        list.toFile().deleteOnExit();
+        dir.resolve("senders.txt.idx").toFile().deleteOnExit();
+        matcher = new SenderMatcher(new SenderListRules("senders.txt", null), dir);
+        var generator = new SyntheticMessages(42);
+        for (int i = 0; i < MESSAGES; i++) {
+            messages[i] = ParsedMessage.of(BenchmarkSupport.parse(generator.next(SyntheticMessages.Profile.TYPICAL)));
+        }
+    }
+
+    @Benchmark
+    public boolean classify() {
+        return matcher.classify(messages[next++ % MESSAGES]);
+    }
+}
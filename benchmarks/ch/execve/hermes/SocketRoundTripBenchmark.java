@@ -0,0 +1,104 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import ch.execve.hermes.synthetic.SyntheticMessages;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One delivery over the Unix socket, the way client/hermes.c does it: connect, send the message,
+ * shut down the write side and read the folder name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SocketRoundTripBenchmark {
+    @Param({"SMALL", "LARGE"})
+    public SyntheticMessages.Profile profile;
+
+    @Param({"false", "true"})
+    public boolean streamHeaders;
+
+    private Path directory;
+    private UnixDomainSocketAddress address;
+    private DatabaseLogger dbLogger;
+    private byte[] message;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.quietLogging();
+        directory = Files.createTempDirectory("hermes-bench");
+        Path socket = directory.resolve("hermes.sock");
+        address = UnixDomainSocketAddress.of(socket);
+        dbLogger = BenchmarkSupport.temporaryDatabase(true);
+        var maildirDelivery = new MaildirDelivery("", MaildirDelivery.FsyncPolicy.NONE, new Metrics());
+        var dispatcher = new Dispatcher(
+            new ClassifierLoader(BenchmarkSupport.CONFIG_DIR.toString()), false, 0, 1000, () -> dbLogger,
+            new DuplicateDetector(0, "", 1000, maildirDelivery, new Metrics()), 1, new Metrics());
+        var listener = new SocketListener(
+            socket.toString(), 16, streamHeaders, 0, () -> dispatcher, maildirDelivery, new Metrics());
+        Thread.ofPlatform().daemon().name("bench-server").start(listener::start);
+        while (!Files.exists(socket)) {
+            Thread.sleep(10);
+        }
+        message = new SyntheticMessages(3).next(profile);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        dbLogger.close();
+        Files.deleteIfExists(address.getPath());
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public int roundTrip() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(address);
+            ByteBuffer request = ByteBuffer.wrap(message);
+            while (request.hasRemaining()) {
+                channel.write(request);
+            }
+            channel.shutdownOutput();
+            ByteBuffer response = ByteBuffer.allocate(1024);
+            while (channel.read(response) >= 0) {
+                // Read until the server closes the connection.
+            }
+            return response.position();
+        }
+    }
+}
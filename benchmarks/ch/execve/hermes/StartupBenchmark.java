@@ -0,0 +1,92 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import ch.execve.hermes.classifier.HeaderMatcher;
+import ch.execve.hermes.classifier.Rule;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time from a cold JVM to loaded classifiers, from the JSON configuration or from a rule snapshot.
+ * Every measurement runs in a fresh fork, so class loading and JIT warm-up are included.
+ *
+ * <p>The gain of the AOT cache is measured end to end by the startup_time script instead, since it
+ * needs the server's own class path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(10)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class StartupBenchmark {
+    private static final String CONFIG = """
+        [{"name": "spam", "implementation": "ch.execve.hermes.classifier.HeaderMatcher", "destination": "spam"}]
+        """;
+
+    @Param({"false", "true"})
+    public boolean snapshot;
+
+    @Param({"500", "5000"})
+    public int patterns;
+
+    private Path configDir;
+    private Path snapshotFile;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.quietLogging();
+        configDir = Files.createTempDirectory("hermes-bench-startup");
+        configDir.toFile().deleteOnExit();
+        List<Rule> rules = BenchmarkSupport.largeRules(patterns);
+        String rulesJson = BenchmarkSupport.toJson(rules);
+        Files.writeString(configDir.resolve("classifiers.json"), CONFIG);
+        Files.writeString(configDir.resolve("spam.json"), rulesJson);
+        snapshotFile = configDir.resolve("classifiers.snapshot");
+        if (snapshot) {
+            // Written directly rather than by a first load, which would warm up the JSON path.
+            RuleSnapshot.write(
+                snapshotFile,
+                Hashing.murmur3_128().hashString(CONFIG, StandardCharsets.UTF_8),
+                List.of(new RuleSnapshot.Entry(
+                    new ClassifierConfig("spam", HeaderMatcher.class.getName(), "spam"),
+                    Hashing.murmur3_128().hashString(rulesJson, StandardCharsets.UTF_8),
+                    Optional.of(ImmutableList.copyOf(rules)))));
+        }
+    }
+
+    @Benchmark
+    public Object load() {
+        return new ClassifierLoader(configDir.toString(), snapshot ? snapshotFile.toString() : "").load();
+    }
+}
@@ -0,0 +1,373 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes.load;
+
+import ch.execve.hermes.HermesClient;
+import ch.execve.hermes.synthetic.SyntheticMessages;
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Puts a running server under load: {@code --connections} workers send messages at a combined
+ * {@code --rate} for {@code --duration} seconds, over the legacy protocol (one connection per
+ * message, like client/hermes.c) or the framed one (one long-lived connection per worker).
+ *
+ * <p>Latency is measured from the time a message was due to be sent, not from when it was sent,
+ * so a server that falls behind shows up in the percentiles instead of slowing the load down.
+ * Responses slower than {@code --timeout-ms} count as timeouts, since the C client would have
+ * given up on them. Prints a summary every {@code --report-interval} seconds and at the end, and
+ * exits with status 1 if there were more than {@code --max-timeouts} timeouts or any I/O errors,
+ * so long soak runs can gate on it.
+ */
+public final class LoadGenerator {
+    // Mirrors SocketListener.ERROR_FOLDER and MaildirDelivery.DELIVERED_MARKER.
+    private static final String ERROR_FOLDER = "INBOX.hermes-error";
+    private static final String DELIVERED_MARKER = "\u0006";
+
+    enum Protocol { LEGACY, FRAMED }
+
+    static class Args {
+        @Parameter(names = "--socket-path", description = "The server's Unix domain socket", required = true)
+        String socketPath;
+
+        @Parameter(names = "--connections", description = "Number of concurrent workers, each with its own connection")
+        int connections = 16;
+
+        @Parameter(names = "--rate", description = "Messages per second over all workers. 0 sends each message as soon as the previous one was answered.")
+        double rate = 0;
+
+        @Parameter(names = "--duration", description = "Seconds to send messages for, after the warm-up")
+        int durationSeconds = 30;
+
+        @Parameter(names = "--warmup", description = "Seconds to send messages for before measuring")
+        int warmupSeconds = 5;
+
+        @Parameter(names = "--protocol", description = "legacy or framed")
+        Protocol protocol = Protocol.LEGACY;
+
+        @Parameter(names = "--profile", description = "Synthetic message profile, used when no message files are given")
+        SyntheticMessages.Profile profile = SyntheticMessages.Profile.TYPICAL;
+
+        @Parameter(names = "--timeout-ms", description = "Responses slower than this count as client timeouts (hermes.c waits 3 s)")
+        long timeoutMs = 3000;
+
+        @Parameter(names = "--report-interval", description = "Seconds between progress reports. 0 only reports at the end.")
+        int reportIntervalSeconds = 10;
+
+        @Parameter(names = "--max-timeouts", description = "Exit with an error if there were more timeouts than this")
+        long maxTimeouts = 0;
+
+        @Parameter(description = "Message files or directories of them to replay, e.g. tests/data")
+        List<String> messages = new ArrayList<>();
+    }
+
+    /** Counters and latencies for one measurement window. */
+    private static final class Window {
+        final LongAdder completed = new LongAdder();
+        final LongAdder errorFolder = new LongAdder();
+        final LongAdder timeouts = new LongAdder();
+        final LongAdder ioErrors = new LongAdder();
+        private long[] latencies = new long[1024];
+        private int count = 0;
+
+        synchronized void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+
+        synchronized long[] sortedLatencies() {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        void print(PrintStream out, String label, double seconds) {
+            long[] sorted = sortedLatencies();
+            long done = completed.sum();
+            out.printf(
+                "%s: %d messages in %.1f s, %.1f/s; latency ms p50 %.2f p99 %.2f p999 %.2f max %.2f; "
+                    + "error folder %d (%.2f%%), timeouts %d, I/O errors %d%n",
+                label, done, seconds, done / seconds,
+                percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6,
+                errorFolder.sum(), done == 0 ? 0 : 100.0 * errorFolder.sum() / done,
+                timeouts.sum(), ioErrors.sum());
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1e6;
+        }
+    }
+
+    private final Args args;
+    private final List<byte[]> corpus;
+    private final long timeoutNanos;
+    // Replaced when the warm-up ends; workers record into whichever window is current.
+    private volatile Window window = new Window();
+    private volatile Window interval = new Window();
+
+    private LoadGenerator(Args args, List<byte[]> corpus) {
+        this.args = args;
+        this.corpus = corpus;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(args.timeoutMs);
+    }
+
+    public static void main(String[] argv) throws Exception {
+        var args = new Args();
+        JCommander.newBuilder().addObject(args).build().parse(argv);
+        List<byte[]> corpus = loadCorpus(args);
+        System.out.printf(
+            "Sending %d distinct messages over %d %s connections at %s for %d s (+%d s warm-up)%n",
+            corpus.size(), args.connections, args.protocol.name().toLowerCase(),
+            args.rate > 0 ? args.rate + " messages/s" : "full speed", args.durationSeconds, args.warmupSeconds);
+        Window result = new LoadGenerator(args, corpus).run();
+        if (result.ioErrors.sum() > 0 || result.timeouts.sum() > args.maxTimeouts) {
+            System.exit(1);
+        }
+    }
+
+    private static List<byte[]> loadCorpus(Args args) throws IOException {
+        List<byte[]> corpus = new ArrayList<>();
+        for (String name : args.messages) {
+            Path path = Path.of(name);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.list(path)) {
+                    for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+                        corpus.add(Files.readAllBytes(file));
+                    }
+                }
+            } else {
+                corpus.add(Files.readAllBytes(path));
+            }
+        }
+        if (corpus.isEmpty()) {
+            var generator = new SyntheticMessages(42);
+            for (int i = 0; i < 256; i++) {
+                corpus.add(generator.next(args.profile));
+            }
+        }
+        return corpus;
+    }
+
+    private Window run() throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(args.warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(args.durationSeconds);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < args.connections; i++) {
+            int worker = i;
+            workers.add(Thread.ofVirtual().name("load-" + i).start(() -> work(worker, start, end)));
+        }
+
+        Window measured = null;
+        long intervalStart = start;
+        long reportEvery = TimeUnit.SECONDS.toNanos(args.reportIntervalSeconds);
+        while (System.nanoTime() < end) {
+            long now = System.nanoTime();
+            if (measured == null && now >= measureFrom) {
+                measured = new Window();
+                window = measured;
+            }
+            if (reportEvery > 0 && now - intervalStart >= reportEvery) {
+                Window finished = interval;
+                interval = new Window();
+                finished.print(System.out, now < measureFrom ? "warm-up" : "interval", (now - intervalStart) / 1e9);
+                intervalStart = now;
+            }
+            Thread.sleep(100);
+        }
+        // Give the last responses the client timeout to arrive, then abandon them.
+        long joinDeadline = System.nanoTime() + 2 * timeoutNanos;
+        for (Thread worker : workers) {
+            if (!worker.join(Duration.ofNanos(Math.max(1, joinDeadline - System.nanoTime())))) {
+                worker.interrupt();
+                worker.join();
+            }
+        }
+        if (measured == null) {
+            measured = window;
+        }
+        measured.print(System.out, "total", (System.nanoTime() - measureFrom) / 1e9);
+        return measured;
+    }
+
+    private void work(int worker, long start, long end) {
+        // Workers start staggered so that a fixed rate is spread evenly over time.
+        long period = args.rate > 0 ? (long) (1e9 * args.connections / args.rate) : 0;
+        long due = start + period * worker / args.connections;
+        int next = worker;
+        HermesClient client = null;
+        List<CompletableFuture<?>> inFlight = new ArrayList<>();
+        try {
+            if (args.protocol == Protocol.FRAMED) {
+                client = HermesClient.connect(Path.of(args.socketPath));
+            }
+            // Interrupted when the run is over and this worker is still waiting for a response.
+            while (due < end && !Thread.currentThread().isInterrupted()) {
+                if (period > 0) {
+                    LockSupport.parkNanos(due - System.nanoTime());
+                } else {
+                    due = System.nanoTime();
+                }
+                byte[] message = corpus.get(next % corpus.size());
+                next += args.connections;
+                if (client == null) {
+                    sendLegacy(message, due);
+                } else {
+                    long sent = due;
+                    CompletableFuture<?> response = client.classify(message)
+                        .whenComplete((folder, error) -> complete(folder, error, sent));
+                    inFlight.add(response);
+                    if (period == 0) {
+                        awaitQuietly(response);
+                    }
+                    inFlight.removeIf(CompletableFuture::isDone);
+                }
+                due += period;
+            }
+        } catch (IOException e) {
+            fail();
+        } finally {
+            if (client != null) {
+                closeQuietly(client, inFlight);
+            }
+        }
+    }
+
+    /**
+     * Waits for {@code response} up to the client timeout. A late response is still counted when
+     * it arrives, and one that never does is counted as a timeout on close.
+     */
+    private void awaitQuietly(CompletableFuture<?> response) {
+        try {
+            response.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // Counted by the completion handler or on close.
+        }
+    }
+
+    private void closeQuietly(HermesClient client, List<CompletableFuture<?>> inFlight) {
+        awaitQuietly(CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new)));
+        // Responses still missing once the timeout has passed are timeouts, not I/O errors.
+        for (CompletableFuture<?> response : inFlight) {
+            if (!response.isDone()) {
+                window.timeouts.increment();
+                interval.timeouts.increment();
+            }
+        }
+        try {
+            client.close();
+        } catch (IOException e) {
+            fail();
+        }
+    }
+
+    private void sendLegacy(byte[] message, long due) {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            // A blocking read can't time out, so the exchange runs on a thread of its own and is
+            // abandoned, by closing the channel, once the client would have given up.
+            var response = new CompletableFuture<String>();
+            Thread.ofVirtual().name("load-legacy").start(() -> {
+                try {
+                    response.complete(exchangeLegacy(channel, message));
+                } catch (IOException e) {
+                    response.completeExceptionally(e);
+                }
+            });
+            try {
+                complete(response.get(timeoutNanos, TimeUnit.NANOSECONDS), null, due);
+            } catch (ExecutionException e) {
+                complete(null, e.getCause(), due);
+            } catch (TimeoutException e) {
+                window.timeouts.increment();
+                interval.timeouts.increment();
+            }
+        } catch (InterruptedException e) {
+            // Abandoned at the end of the run, still waiting for the server.
+            Thread.currentThread().interrupt();
+            window.timeouts.increment();
+            interval.timeouts.increment();
+        } catch (IOException e) {
+            complete(null, e, due);
+        }
+    }
+
+    private String exchangeLegacy(SocketChannel channel, byte[] message) throws IOException {
+        channel.connect(UnixDomainSocketAddress.of(Path.of(args.socketPath)));
+        ByteBuffer request = ByteBuffer.wrap(message);
+        while (request.hasRemaining()) {
+            channel.write(request);
+        }
+        channel.shutdownOutput();
+        ByteBuffer response = ByteBuffer.allocate(1024);
+        while (response.hasRemaining() && channel.read(response) >= 0) {
+            // Read until the server closes the connection.
+        }
+        return new String(response.array(), 0, response.position(), StandardCharsets.UTF_8);
+    }
+
+    private void complete(String folder, Throwable error, long due) {
+        long latency = System.nanoTime() - due;
+        for (Window w : new Window[] {window, interval}) {
+            if (error != null) {
+                w.ioErrors.increment();
+                continue;
+            }
+            w.completed.increment();
+            w.record(latency);
+            if (latency > timeoutNanos) {
+                w.timeouts.increment();
+            }
+            if (folder.startsWith(DELIVERED_MARKER)) {
+                folder = folder.substring(DELIVERED_MARKER.length());
+            }
+            if (folder.equals(ERROR_FOLDER)) {
+                w.errorFolder.increment();
+            }
+        }
+    }
+
+    private void fail() {
+        window.ioErrors.increment();
+        interval.ioErrors.increment();
+    }
+}
@@ -0,0 +1,159 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes.synthetic;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic emails with realistic header counts and sizes. Messages are deterministic
+ * for a given seed, so benchmark runs are comparable.
+ */
+public final class SyntheticMessages {
+
+    /** Rough shapes of the mail we see in production. */
+    public enum Profile {
+        /** A short notification: few headers, a couple of lines of text. */
+        SMALL(4, 0, 1_000, 0),
+        /** A mailing list post: a long Received chain, DKIM, List-* headers. */
+        TYPICAL(8, 12, 20_000, 0),
+        /** A message with a large base64 attachment. */
+        LARGE(10, 12, 20_000, 2_000_000);
+
+        final int received;
+        final int extraHeaders;
+        final int textBytes;
+        final int attachmentBytes;
+
+        Profile(int received, int extraHeaders, int textBytes, int attachmentBytes) {
+            this.received = received;
+            this.extraHeaders = extraHeaders;
+            this.textBytes = textBytes;
+            this.attachmentBytes = attachmentBytes;
+        }
+    }
+
+    private static final List<String> WORDS = List.of(
+        "alpaca", "invoice", "meeting", "release", "quarterly", "update", "urgent", "project", "review",
+        "newsletter", "weekend", "delivery", "account", "report", "schedule", "llama", "offer", "team");
+    private static final List<String> DOMAINS = List.of(
+        "example.com", "example.org", "lists.example.net", "mail.example.ch", "notifications.example.io");
+
+    private final Random random;
+
+    public SyntheticMessages(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /** Generates the next message of the given profile. */
+    public byte[] next(Profile profile) {
+        var out = new StringBuilder(profile.textBytes + profile.attachmentBytes * 4 / 3 + 4096);
+        String sender = word() + "." + word() + "@" + pick(DOMAINS);
+        String boundary = "=_boundary_" + Long.toHexString(random.nextLong());
+
+        for (int i = 0; i < profile.received; i++) {
+            out.append("Received: from mx").append(i).append('.').append(pick(DOMAINS))
+                .append(" (mx").append(i).append(" [192.0.2.").append(random.nextInt(255)).append("])\r\n")
+                .append("\tby relay.example.ch (Postfix) with ESMTPS id ").append(Long.toHexString(random.nextLong()))
+                .append("\r\n\tfor <user@example.ch>; Mon, 6 Oct 2025 10:").append(10 + random.nextInt(50))
+                .append(":00 +0200\r\n");
+        }
+        out.append("Return-Path: <").append(sender).append(">\r\n");
+        out.append("From: ").append(capitalize(word())).append(' ').append(capitalize(word()))
+            .append(" <").append(sender).append(">\r\n");
+        out.append("To: user@example.ch\r\n");
+        out.append("Subject: ").append(subject()).append("\r\n");
+        out.append("Date: Mon, 6 Oct 2025 10:00:00 +0200\r\n");
+        out.append("Message-ID: <").append(Long.toHexString(random.nextLong())).append('@').append(pick(DOMAINS)).append(">\r\n");
+        out.append("MIME-Version: 1.0\r\n");
+        for (int i = 0; i < profile.extraHeaders; i++) {
+            appendExtraHeader(out, i);
+        }
+
+        if (profile.attachmentBytes == 0) {
+            out.append("Content-Type: text/plain; charset=utf-8\r\n\r\n");
+            appendText(out, profile.textBytes);
+        } else {
+            out.append("Content-Type: multipart/mixed; boundary=\"").append(boundary).append("\"\r\n\r\n");
+            out.append("--").append(boundary).append("\r\nContent-Type: text/plain; charset=utf-8\r\n\r\n");
+            appendText(out, profile.textBytes);
+            out.append("--").append(boundary).append("\r\nContent-Type: application/octet-stream\r\n")
+                .append("Content-Disposition: attachment; filename=\"data.bin\"\r\n")
+                .append("Content-Transfer-Encoding: base64\r\n\r\n");
+            byte[] attachment = new byte[profile.attachmentBytes];
+            random.nextBytes(attachment);
+            out.append(Base64.getMimeEncoder().encodeToString(attachment)).append("\r\n");
+            out.append("--").append(boundary).append("--\r\n");
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void appendExtraHeader(StringBuilder out, int i) {
+        switch (i % 4) {
+            case 0 -> out.append("DKIM-Signature: v=1; a=rsa-sha256; c=relaxed/relaxed; d=").append(pick(DOMAINS))
+                .append(";\r\n\ts=selector1; h=from:to:subject:date:message-id;\r\n\tb=")
+                .append(Base64.getEncoder().encodeToString(bytes(96))).append("\r\n");
+            case 1 -> out.append("List-Id: ").append(word()).append(" <").append(word()).append(".lists.example.net>\r\n");
+            case 2 -> out.append("X-Mailer-").append(i).append(": ").append(word()).append(' ').append(random.nextInt(10)).append("\r\n");
+            default -> out.append("Authentication-Results: relay.example.ch; spf=pass smtp.mailfrom=")
+                .append(pick(DOMAINS)).append("; dkim=pass\r\n");
+        }
+    }
+
+    private String subject() {
+        var subject = new StringBuilder();
+        int words = 3 + random.nextInt(6);
+        for (int i = 0; i < words; i++) {
+            subject.append(i == 0 ? capitalize(word()) : word()).append(' ');
+        }
+        String plain = subject.toString().trim();
+        // Roughly one in four subjects arrives as an RFC 2047 encoded word.
+        if (random.nextInt(4) == 0) {
+            return "=?UTF-8?B?" + Base64.getEncoder().encodeToString(plain.getBytes(StandardCharsets.UTF_8)) + "?=";
+        }
+        return plain;
+    }
+
+    private void appendText(StringBuilder out, int size) {
+        int start = out.length();
+        while (out.length() - start < size) {
+            int lineStart = out.length();
+            while (out.length() - lineStart < 72) {
+                out.append(word()).append(' ');
+            }
+            out.append("\r\n");
+        }
+    }
+
+    private byte[] bytes(int n) {
+        byte[] b = new byte[n];
+        random.nextBytes(b);
+        return b;
+    }
+
+    private String word() {
+        return pick(WORDS);
+    }
+
+    private <T> T pick(List<T> list) {
+        return list.get(random.nextInt(list.size()));
+    }
+
+    private static String capitalize(String s) {
+        return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+}
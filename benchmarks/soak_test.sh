@@ -0,0 +1,53 @@
+#!/bin/sh
+
+# Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+# Runs the server with the test configuration under a constant load for a long time and fails if
+# any message was answered slower than the client timeout. Tune with DURATION (seconds), RATE
+# (messages per second), CONNECTIONS, PROTOCOL (legacy or framed) and PROFILE (SMALL, TYPICAL or
+# LARGE); extra arguments are passed to the server.
+
+set -e
+
+HERMES_SERVER_BIN=$1
+LOAD_GENERATOR_BIN=$2
+CONFIG_DIR=$(dirname "$3")
+shift 3
+
+WORK_DIR=$(mktemp -d)
+# Use a short socket path to stay within the sun_path limit.
+SOCKET_PATH="$WORK_DIR/s"
+
+"$HERMES_SERVER_BIN" \
+  --socket-path "$SOCKET_PATH" \
+  --database-path "$WORK_DIR/hermes.db" \
+  --log-file "$WORK_DIR/hermes.log" \
+  --config-dir "$CONFIG_DIR" \
+  "$@" &
+SERVER_PID=$!
+trap 'kill $SERVER_PID; wait $SERVER_PID 2> /dev/null; rm -rf "$WORK_DIR"' EXIT
+
+until [ -S "$SOCKET_PATH" ]; do
+  sleep 0.1
+done
+
+"$LOAD_GENERATOR_BIN" \
+  --socket-path "$SOCKET_PATH" \
+  --duration "${DURATION:-600}" \
+  --rate "${RATE:-100}" \
+  --connections "${CONNECTIONS:-16}" \
+  --protocol "${PROTOCOL:-legacy}" \
+  --profile "${PROFILE:-TYPICAL}" \
+  --report-interval 60
@@ -0,0 +1,71 @@
+#!/bin/sh
+
+# Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+# Measures the time from launching the server to the first delivered email, averaged over $RUNS
+# starts, with and without the AOT cache and the rule snapshot. Needs GNU date and a JDK 25 java
+# on the PATH (or in $JAVA).
+
+set -e
+
+SERVER_JAR=$1
+AOT_CACHE=$2
+HERMES_CLIENT_BIN=$3
+CONFIG_DIR=$(dirname "$4")
+EMAIL_FILE=$5
+RUNS=${RUNS:-10}
+JAVA=${JAVA:-java}
+
+WORK_DIR=$(mktemp -d)
+trap 'rm -rf "$WORK_DIR"' EXIT
+# Use a short socket path to stay within the sun_path limit.
+SOCKET_PATH="$WORK_DIR/s"
+
+now_ms() {
+  date +%s%3N
+}
+
+# Usage: measure "JVM flags" "server flags"
+measure() {
+  total=0
+  i=0
+  while [ $i -lt "$RUNS" ]; do
+    rm -rf "$WORK_DIR/maildir"
+    start=$(now_ms)
+    $JAVA $1 -cp "$SERVER_JAR" ch.execve.hermes.HermesServer \
+      --socket-path "$SOCKET_PATH" \
+      --database-path "$WORK_DIR/hermes.db" \
+      --log-file "$WORK_DIR/hermes.log" \
+      --config-dir "$CONFIG_DIR" \
+      $2 > /dev/null &
+    server_pid=$!
+    # The client fails until the socket exists; stop once it has delivered the email.
+    until [ -n "$(find "$WORK_DIR/maildir" -type f 2> /dev/null)" ]; do
+      "$HERMES_CLIENT_BIN" "$SOCKET_PATH" "$WORK_DIR/maildir" < "$EMAIL_FILE" > /dev/null 2>&1 || sleep 0.01
+    done
+    end=$(now_ms)
+    kill $server_pid
+    wait $server_pid 2> /dev/null || true
+    total=$((total + end - start))
+    i=$((i + 1))
+  done
+  echo "$((total / RUNS)) ms"
+}
+
+SNAPSHOT_FLAGS="--rule-snapshot $WORK_DIR/classifiers.snapshot"
+
+echo "Plain:                     $(measure "" "")"
+echo "AOT cache:                 $(measure "-XX:AOTCache=$AOT_CACHE" "")"
+echo "AOT cache + rule snapshot: $(measure "-XX:AOTCache=$AOT_CACHE" "$SNAPSHOT_FLAGS")"
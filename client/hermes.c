@@ -22,6 +22,9 @@
 
 #include "libmaildir.h"
 
+// Prefixed to the response when the server has delivered the email itself.
+#define DELIVERED_MARKER '\x06'
+
 
 int main(int argc, char **argv) {
     if (argc != 3) {
@@ -96,6 +99,10 @@ int main(int argc, char **argv) {
     ssize_t response_bytes = recv(sockfd, response_buffer, sizeof(response_buffer) - 1, 0);
     if (response_bytes == -1) {
         perror("recv error");
+    } else if (response_bytes > 0 && response_buffer[0] == DELIVERED_MARKER) {
+        // The server has already written the email to the Maildir.
+        response_buffer[response_bytes] = '\0';
+        printf("Delivered by server to: %s/%s\n", maildir_path, response_buffer + 1);
     } else if (response_bytes > 0) {
         response_buffer[response_bytes] = '\0';
 
@@ -0,0 +1,91 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import com.beust.jcommander.Parameter;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The training run for the server's AOT cache: starts a server in process, sends it the given
+ * messages over both protocols and exits. Takes the server flags plus a list of message files.
+ */
+public class AotTraining {
+    private static final Logger logger = LoggerFactory.getLogger(AotTraining.class);
+
+    static class TrainingArgs {
+        @Parameter(description = "Message files to classify")
+        private List<String> messages = new ArrayList<>();
+    }
+
+    public static void main(String[] args) throws IOException {
+        var trainingArgs = new TrainingArgs();
+        CommandLineArgs flags = CommandLineArgs.getFlags(args, trainingArgs);
+        HermesServer.configureLogging(flags.getLogFile(), "System.err");
+
+        Injector injector = Guice.createInjector(new HermesModule(flags));
+        SocketListener socketListener = injector.getInstance(SocketListener.class);
+        socketListener.bind();
+        Thread.ofPlatform().daemon().name("hermes-training-server").start(socketListener::start);
+
+        Path socket = Path.of(flags.getSocketPath());
+        List<byte[]> messages = new ArrayList<>();
+        for (String file : trainingArgs.messages) {
+            messages.add(Files.readAllBytes(Path.of(file)));
+        }
+        for (byte[] message : messages) {
+            sendLegacy(socket, message);
+        }
+        try (HermesClient client = HermesClient.connect(socket)) {
+            List<CompletableFuture<String>> responses = new ArrayList<>();
+            for (byte[] message : messages) {
+                responses.add(client.classify(message));
+            }
+            CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).join();
+        }
+
+        injector.getInstance(DatabaseLogger.class).close();
+        logger.info("Training run classified {} messages", messages.size() * 2);
+        // The listener thread never returns; exiting also writes out the AOT cache.
+        System.exit(0);
+    }
+
+    private static void sendLegacy(Path socket, byte[] message) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            ByteBuffer request = ByteBuffer.wrap(message);
+            while (request.hasRemaining()) {
+                channel.write(request);
+            }
+            channel.shutdownOutput();
+            ByteBuffer response = ByteBuffer.allocate(1024);
+            while (channel.read(response.clear()) >= 0) {
+                // Read until the server closes the connection.
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of fixed-size direct buffers. Buffers beyond {@code maxPooled} are allocated on demand
+ * and left to the garbage collector when released, so a burst of large messages doesn't pin
+ * memory for the lifetime of the server.
+ */
+final class BufferPool {
+    private final int chunkSize;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    BufferPool(int chunkSize, int maxPooled) {
+        this.chunkSize = chunkSize;
+        this.maxPooled = maxPooled;
+    }
+
+    int chunkSize() {
+        return chunkSize;
+    }
+
+    /** Returns a cleared buffer of {@link #chunkSize} bytes. */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(chunkSize);
+        }
+        pooled.decrementAndGet();
+        return buffer.clear();
+    }
+
+    void release(ByteBuffer buffer) {
+        if (pooled.incrementAndGet() <= maxPooled) {
+            free.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /** The number of idle buffers held by the pool. */
+    int idle() {
+        return pooled.get();
+    }
+}
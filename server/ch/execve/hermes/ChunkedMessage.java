@@ -0,0 +1,105 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A message read from a channel into buffers borrowed from a {@link BufferPool}. The buffers go
+ * back to the pool on {@link #close}, so the message must not be used after that.
+ */
+final class ChunkedMessage implements AutoCloseable {
+    private final BufferPool pool;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private long size = 0;
+    private boolean oversized = false;
+
+    private ChunkedMessage(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Reads {@code channel} until EOF. Stops reading as soon as the message is longer than
+     * {@code maxSize} bytes (0 means no limit); the rest of the stream is left unread.
+     */
+    static ChunkedMessage read(ReadableByteChannel channel, BufferPool pool, long maxSize) throws IOException {
+        var message = new ChunkedMessage(pool);
+        try {
+            message.fill(channel, maxSize);
+        } catch (IOException | RuntimeException e) {
+            message.close();
+            throw e;
+        }
+        return message;
+    }
+
+    private void fill(ReadableByteChannel channel, long maxSize) throws IOException {
+        ByteBuffer chunk = null;
+        while (true) {
+            if (chunk == null || !chunk.hasRemaining()) {
+                chunk = pool.acquire();
+                chunks.add(chunk);
+            }
+            int n = channel.read(chunk);
+            if (n < 0) {
+                break;
+            }
+            size += n;
+            if (maxSize > 0 && size > maxSize) {
+                oversized = true;
+                break;
+            }
+        }
+        for (ByteBuffer c : chunks) {
+            c.flip();
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    /** Whether reading stopped because the message exceeded the size limit. */
+    boolean oversized() {
+        return oversized;
+    }
+
+    /** Streams the message straight from the pooled buffers. */
+    InputStream inputStream() {
+        List<InputStream> parts = new ArrayList<>(chunks.size());
+        for (ByteBuffer chunk : chunks) {
+            parts.add(new ByteBufferInputStream(chunk));
+        }
+        return new SequenceInputStream(Collections.enumeration(parts));
+    }
+
+    /** The chunks holding the message, as read-only views. */
+    ByteBuffer[] buffers() {
+        return chunks.stream().map(ByteBuffer::asReadOnlyBuffer).toArray(ByteBuffer[]::new);
+    }
+
+    @Override
+    public void close() {
+        chunks.forEach(pool::release);
+        chunks.clear();
+    }
+}
@@ -0,0 +1,120 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import ch.execve.hermes.classifier.ParsedMessage;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the classification of messages by a fingerprint of the headers the classifiers look
+ * at, so that repeat senders are routed without running any rules.
+ *
+ * <p>An instance belongs to one classifier set and is thrown away with it, which is how the cache
+ * is invalidated when the configuration changes.
+ */
+final class ClassificationCache {
+    /**
+     * The first matching classifier, if any. Not {@code complete} if a classifier that would have
+     * been consulted before the answer overran its deadline or failed, in which case the answer
+     * may be different next time and is not cached.
+     */
+    record Classification(Optional<LoadedClassifier> match, boolean complete) {}
+
+    private final ImmutableList<LoadedClassifier> classifiers;
+    // Lower-cased and sorted, so that the fingerprint doesn't depend on the config order.
+    private final ImmutableList<String> headers;
+    private final Cache<HashCode, Optional<LoadedClassifier>> results;
+
+    private ClassificationCache(ImmutableList<LoadedClassifier> classifiers, ImmutableList<String> headers, long maximumSize) {
+        this.classifiers = classifiers;
+        this.headers = headers;
+        this.results = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    /**
+     * Returns a cache for {@code classifiers}, or empty if caching is disabled or one of the
+     * classifiers doesn't declare which headers it reads.
+     */
+    static Optional<ClassificationCache> create(ImmutableList<LoadedClassifier> classifiers, long maximumSize) {
+        if (maximumSize <= 0) {
+            return Optional.empty();
+        }
+        var headers = new TreeSet<String>();
+        for (LoadedClassifier loaded : classifiers) {
+            Optional<ImmutableSet<String>> referenced = loaded.classifier().referencedHeaders();
+            if (referenced.isEmpty()) {
+                return Optional.empty();
+            }
+            referenced.get().forEach(h -> headers.add(h.toLowerCase(Locale.ROOT)));
+        }
+        return Optional.of(new ClassificationCache(classifiers, ImmutableList.copyOf(headers), maximumSize));
+    }
+
+    /** Whether this cache was built for exactly this classifier set. */
+    boolean covers(ImmutableList<LoadedClassifier> current) {
+        return classifiers == current;
+    }
+
+    /**
+     * Returns the cached result for {@code message}, computing it on a miss and storing it if it is
+     * complete.
+     */
+    Optional<LoadedClassifier> get(ParsedMessage message, Supplier<Classification> classify) {
+        HashCode key = fingerprint(message);
+        Optional<LoadedClassifier> cached = results.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        // Concurrent misses for the same key may both classify; the result is the same either way.
+        Classification result = classify.get();
+        if (result.complete()) {
+            results.put(key, result.match());
+        }
+        return result.match();
+    }
+
+    CacheStats stats() {
+        return results.stats();
+    }
+
+    long size() {
+        return results.size();
+    }
+
+    private HashCode fingerprint(ParsedMessage message) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (String header : headers) {
+            ImmutableList<String> values = message.headers(header);
+            // Lengths delimit the values, so "ab"+"c" and "a"+"bc" hash differently.
+            hasher.putInt(values.size());
+            for (String value : values) {
+                hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+            }
+        }
+        return hasher.hash();
+    }
+}
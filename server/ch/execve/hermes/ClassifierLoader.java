@@ -0,0 +1,220 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import ch.execve.hermes.classifier.Classifier;
+import ch.execve.hermes.classifier.HeaderMatcher;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Instantiates the classifiers listed in classifiers.json.
+ *
+ * <p>Classifiers built by a previous {@link #load} are reused as long as their entry and the
+ * contents of their rule file are unchanged, so a reload only recompiles what was edited.
+ */
+@Singleton
+class ClassifierLoader {
+    private static final Logger logger = LoggerFactory.getLogger(ClassifierLoader.class);
+
+    /** Identifies a classifier instance by its config entry and the contents of its rule file. */
+    private record CacheKey(String name, String implementation, HashCode rules) {}
+
+    private final String configDir;
+    // Where the last successfully loaded configuration is kept for fast startup, or null.
+    private final Path snapshotPath;
+    private final ObjectMapper mapper = new ObjectMapper()
+        .enable(JsonParser.Feature.ALLOW_YAML_COMMENTS);
+    private Map<CacheKey, Classifier> cache = new HashMap<>();
+
+    ClassifierLoader(String configDir) {
+        this(configDir, "");
+    }
+
+    @Inject
+    ClassifierLoader(@Named("configDir") String configDir, @Named("ruleSnapshot") String ruleSnapshot) {
+        this.configDir = configDir;
+        this.snapshotPath = ruleSnapshot.isEmpty() ? null : Path.of(ruleSnapshot);
+    }
+
+    File configFile() {
+        return new File(configDir, "classifiers.json");
+    }
+
+    /**
+     * Reads the configuration and returns the classifiers in config order. Throws if any classifier
+     * cannot be instantiated, in which case the cache is left untouched.
+     */
+    synchronized ImmutableList<LoadedClassifier> load() {
+        var configFile = configFile();
+        var newCache = new HashMap<CacheKey, Classifier>();
+
+        try {
+            byte[] configBytes = Files.readAllBytes(configFile.toPath());
+            HashCode configHash = Hashing.murmur3_128().hashBytes(configBytes);
+            Optional<List<RuleSnapshot.Entry>> snapshot = readSnapshot(configHash);
+            List<ClassifierConfig> configs = snapshot.isPresent()
+                ? snapshot.get().stream().map(RuleSnapshot.Entry::config).toList()
+                : mapper.readValue(configBytes, new TypeReference<List<ClassifierConfig>>() {});
+            logger.info("Found {} classifier configurations{}.", configs.size(), snapshot.isPresent() ? " in the rule snapshot" : "");
+
+            var keys = new ArrayList<CacheKey>(configs.size());
+            var instances = new ArrayList<Callable<Classifier>>(configs.size());
+            for (int i = 0; i < configs.size(); i++) {
+                var config = configs.get(i);
+                if (config.name() == null || config.implementation() == null || config.destination() == null) {
+                    throw new IllegalArgumentException("Incomplete classifier configuration: " + config);
+                }
+                var classifierFile = new File(configDir, config.name() + ".json");
+                // A missing rule file is left for the implementation to report.
+                var rules = classifierFile.exists()
+                    ? Hashing.murmur3_128().hashBytes(Files.readAllBytes(classifierFile.toPath()))
+                    : HashCode.fromInt(0);
+                var key = new CacheKey(config.name(), config.implementation(), rules);
+                keys.add(key);
+
+                var cached = cache.get(key);
+                int index = i;
+                var snapshotRules = snapshot
+                    .map(entries -> entries.get(index))
+                    .filter(entry -> entry.rulesHash().equals(rules) && isHeaderMatcher(config.implementation()))
+                    .flatMap(RuleSnapshot.Entry::headerRules);
+                if (cached != null) {
+                    logger.info("Reusing unchanged classifier: {}", config.name());
+                    instances.add(() -> cached);
+                } else if (snapshotRules.isPresent()) {
+                    logger.info("Loading classifier from the rule snapshot: {}", config.name());
+                    instances.add(() -> new HeaderMatcher(snapshotRules.get(), classifierFile.getAbsolutePath()));
+                } else {
+                    logger.info("Loading classifier: {}", config.name());
+                    instances.add(() -> instantiate(config.implementation(), classifierFile.getAbsolutePath()));
+                }
+            }
+
+            List<Classifier> classifiers = instantiateAll(instances);
+            var builder = ImmutableList.<LoadedClassifier>builder();
+            var entries = new ArrayList<RuleSnapshot.Entry>(configs.size());
+            for (int i = 0; i < configs.size(); i++) {
+                var config = configs.get(i);
+                var classifier = classifiers.get(i);
+                newCache.put(keys.get(i), classifier);
+                builder.add(new LoadedClassifier(config.name(), classifier, config.destination()));
+                entries.add(new RuleSnapshot.Entry(
+                    config,
+                    keys.get(i).rules(),
+                    classifier.getClass() == HeaderMatcher.class
+                        ? Optional.of(((HeaderMatcher) classifier).rules())
+                        : Optional.empty()));
+            }
+            if (!snapshot.equals(Optional.of(entries))) {
+                writeSnapshot(configHash, entries);
+            }
+            cache = newCache;
+            return builder.build();
+        } catch (IOException | ExecutionException e) {
+            throw new RuntimeException("Failed to load and instantiate classifiers from " + configFile.getAbsolutePath(),
+                e instanceof ExecutionException ? e.getCause() : e);
+        }
+    }
+
+    /**
+     * Builds the classifiers, compiling their rules concurrently when there are several. Returns them
+     * in the same order.
+     */
+    private static List<Classifier> instantiateAll(List<Callable<Classifier>> instances) throws ExecutionException {
+        if (instances.size() < 2) {
+            List<Classifier> classifiers = new ArrayList<>();
+            for (var instance : instances) {
+                try {
+                    classifiers.add(instance.call());
+                } catch (Exception e) {
+                    throw new ExecutionException(e);
+                }
+            }
+            return classifiers;
+        }
+        try (ExecutorService loaders = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Classifier> classifiers = new ArrayList<>(instances.size());
+            for (Future<Classifier> future : loaders.invokeAll(instances)) {
+                classifiers.add(future.get());
+            }
+            return classifiers;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExecutionException(e);
+        }
+    }
+
+    private static boolean isHeaderMatcher(String implementation) {
+        return implementation.equals(HeaderMatcher.class.getName());
+    }
+
+    private Optional<List<RuleSnapshot.Entry>> readSnapshot(HashCode configHash) {
+        if (snapshotPath == null) {
+            return Optional.empty();
+        }
+        try {
+            return RuleSnapshot.read(snapshotPath, configHash);
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable rule snapshot {}", snapshotPath, e);
+            return Optional.empty();
+        }
+    }
+
+    private void writeSnapshot(HashCode configHash, List<RuleSnapshot.Entry> entries) {
+        if (snapshotPath == null) {
+            return;
+        }
+        try {
+            RuleSnapshot.write(snapshotPath, configHash, entries);
+            logger.info("Wrote rule snapshot {}", snapshotPath);
+        } catch (IOException e) {
+            logger.warn("Could not write rule snapshot {}", snapshotPath, e);
+        }
+    }
+
+    private static Classifier instantiate(String implementationName, String classifierPath)
+        throws ClassNotFoundException, NoSuchMethodException, InstantiationException, IllegalAccessException,
+               InvocationTargetException {
+        // Use reflection to instantiate the specified classifier class
+        var implementation = Class.forName(implementationName);
+        var constructor = implementation.getConstructor(String.class);
+        return (Classifier) constructor.newInstance(classifierPath);
+    }
+}
@@ -20,11 +20,17 @@ import com.beust.jcommander.Parameter;
 /** A JCommander configuration for command line arguments. */
 public class CommandLineArgs {
     public static CommandLineArgs getFlags(String[] args) {
+        return getFlags(args, new Object[0]);
+    }
+
+    /** Parses the common flags together with tool-specific flag objects. */
+    public static CommandLineArgs getFlags(String[] args, Object... extraFlags) {
         var flags = new CommandLineArgs();
-        JCommander.newBuilder()
-            .addObject(flags)
-            .build()
-            .parse(args);
+        var builder = JCommander.newBuilder().addObject(flags);
+        for (Object extra : extraFlags) {
+            builder.addObject(extra);
+        }
+        builder.build().parse(args);
         return flags;
     }
 
@@ -37,9 +43,118 @@ public class CommandLineArgs {
     @Parameter(names = "--log-file", description = "Path to log file. If not specified, logs to stdout.")
     private String logFile = null;
 
+    @Parameter(
+        names = "--log-queue-size",
+        description = "Queue log events for a background writer, holding at most this many. 0 writes them synchronously.")
+    private int logQueueSize = 0;
+
+    @Parameter(
+        names = "--log-overflow",
+        description = "When the log queue is full: block the caller, or drop informational events first and then all (drop)")
+    private HermesServer.LogOverflow logOverflow = HermesServer.LogOverflow.BLOCK;
+
+    @Parameter(
+        names = "--dispatch-log-sample",
+        description = "Log one in this many per-message dispatch lines. 1 logs all of them, 0 none.")
+    private int dispatchLogSample = 1;
+
     @Parameter(names = "--database-path", description = "Path for the SQLite database file")
     private String databasePath = "hermes_log.db";
 
+    @Parameter(
+        names = "--max-in-flight",
+        description = "Maximum number of messages processed concurrently, over all connections and framed requests. Further connections wait in the socket backlog.")
+    private int maxInFlight = 16;
+
+    @Parameter(
+        names = "--database-async",
+        description = "Write the dispatch log in batches on a background thread instead of on the delivery path")
+    private boolean databaseAsync = false;
+
+    @Parameter(names = "--database-batch-size", description = "Maximum number of log records per transaction in async mode")
+    private int databaseBatchSize = 256;
+
+    @Parameter(
+        names = "--database-batch-latency-ms",
+        description = "Maximum time a log record waits for a batch to fill up in async mode")
+    private int databaseBatchLatencyMs = 50;
+
+    @Parameter(
+        names = "--database-partitioning",
+        description = "Start a new dispatch log table every day, week or month (UTC), or never (none)")
+    private DatabaseLogger.Partitioning databasePartitioning = DatabaseLogger.Partitioning.NONE;
+
+    @Parameter(
+        names = "--database-retention",
+        description = "Number of dispatch log tables to keep, including the current one. 0 keeps all of them.")
+    private int databaseRetention = 0;
+
+    @Parameter(
+        names = "--stream-headers",
+        description = "Classify as soon as the headers arrive and discard the body, if no classifier needs it")
+    private boolean streamHeaders = false;
+
+    @Parameter(
+        names = "--parallel-classifiers",
+        description = "Evaluate classifiers concurrently. The first match in config order still wins.")
+    private boolean parallelClassifiers = false;
+
+    @Parameter(
+        names = "--classifier-deadline-ms",
+        description = "Time a classifier may spend on one message before it is treated as not matching. 0 means no limit.")
+    private int classifierDeadlineMs = 1000;
+
+    @Parameter(
+        names = "--watch-config",
+        description = "Reload classifiers when files in the config directory change")
+    private boolean watchConfig = false;
+
+    @Parameter(
+        names = "--rule-snapshot",
+        description = "File (e.g. next to classifiers.json) to keep a binary copy of the last loaded configuration in, for faster startup")
+    private String ruleSnapshot = null;
+
+    @Parameter(
+        names = "--max-message-size",
+        description = "Messages larger than this many bytes are sent to the error folder unread. 0 means no limit.")
+    private long maxMessageSize = 0;
+
+    @Parameter(
+        names = "--maildir-path",
+        description = "Maildir root the server delivers messages to. If not specified, clients deliver messages themselves.")
+    private String maildirPath = null;
+
+    @Parameter(
+        names = "--fsync-policy",
+        description = "When server-side delivery flushes messages to disk: none, each or batch")
+    private MaildirDelivery.FsyncPolicy fsyncPolicy = MaildirDelivery.FsyncPolicy.NONE;
+
+    @Parameter(
+        names = "--classification-cache-size",
+        description = "Number of header fingerprints whose classification is remembered. 0 disables the cache.")
+    private long classificationCacheSize = 0;
+
+    @Parameter(
+        names = "--metrics-interval",
+        description = "Seconds between metrics dumps. 0 disables them.")
+    private int metricsIntervalSeconds = 0;
+
+    @Parameter(
+        names = "--metrics-file",
+        description = "File the metrics dump is written to. If not specified, metrics are logged.")
+    private String metricsFile = null;
+
+    @Parameter(
+        names = "--duplicate-window",
+        description = "Seconds for which a message's destination is remembered, so that a redelivered copy is answered "
+            + "without being classified or logged again. 0 disables duplicate detection.")
+    private int duplicateWindowSeconds = 0;
+
+    @Parameter(
+        names = "--duplicate-state-file",
+        description = "File the duplicate detector's state is kept in across restarts. If not specified, it starts empty.")
+    private String duplicateStateFile = null;
+
     public String getConfigDir() {
         return configDir;
     }
@@ -52,9 +167,97 @@ public class CommandLineArgs {
         return logFile;
     }
 
+    public int getLogQueueSize() {
+        return logQueueSize;
+    }
+
+    public HermesServer.LogOverflow getLogOverflow() {
+        return logOverflow;
+    }
+
+    public int getDispatchLogSample() {
+        return dispatchLogSample;
+    }
+
     public String getDatabasePath() {
         return databasePath;
     }
 
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public boolean isDatabaseAsync() {
+        return databaseAsync;
+    }
+
+    public int getDatabaseBatchSize() {
+        return databaseBatchSize;
+    }
+
+    public int getDatabaseBatchLatencyMs() {
+        return databaseBatchLatencyMs;
+    }
+
+    public DatabaseLogger.Partitioning getDatabasePartitioning() {
+        return databasePartitioning;
+    }
+
+    public int getDatabaseRetention() {
+        return databaseRetention;
+    }
+
+    public boolean isStreamHeaders() {
+        return streamHeaders;
+    }
+
+    public boolean isParallelClassifiers() {
+        return parallelClassifiers;
+    }
+
+    public int getClassifierDeadlineMs() {
+        return classifierDeadlineMs;
+    }
+
+    public boolean isWatchConfig() {
+        return watchConfig;
+    }
+
+    public String getRuleSnapshot() {
+        return ruleSnapshot;
+    }
+
+    public long getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    public String getMaildirPath() {
+        return maildirPath;
+    }
+
+    public MaildirDelivery.FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public long getClassificationCacheSize() {
+        return classificationCacheSize;
+    }
+
+    public int getMetricsIntervalSeconds() {
+        return metricsIntervalSeconds;
+    }
+
+    public String getMetricsFile() {
+        return metricsFile;
+    }
+
+    public int getDuplicateWindowSeconds() {
+        return duplicateWindowSeconds;
+    }
+
+    public String getDuplicateStateFile() {
+        return duplicateStateFile;
+    }
+
     private CommandLineArgs() {}
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the config directory and swaps a freshly loaded classifier set into the dispatcher
+ * whenever a JSON file in it changes. If the new configuration fails to load, the old classifiers
+ * stay in place.
+ */
+@Singleton
+class ConfigWatcher {
+    private static final Logger logger = LoggerFactory.getLogger(ConfigWatcher.class);
+    // Editors often write a file in several steps; wait for the directory to settle.
+    private static final long SETTLE_MILLIS = 500;
+
+    private final Path configDir;
+    private final ClassifierLoader loader;
+    private final Dispatcher dispatcher;
+
+    @Inject
+    ConfigWatcher(@Named("configDir") String configDir, ClassifierLoader loader, Dispatcher dispatcher) {
+        this.configDir = Path.of(configDir);
+        this.loader = loader;
+        this.dispatcher = dispatcher;
+    }
+
+    /** Starts watching on a background daemon thread. */
+    void start() throws IOException {
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        configDir.register(
+            watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+        Thread.ofPlatform()
+            .name("hermes-config-watcher")
+            .daemon()
+            .start(() -> watch(watchService));
+        logger.info("Watching {} for configuration changes", configDir.toAbsolutePath());
+    }
+
+    private void watch(WatchService watchService) {
+        try (watchService) {
+            while (true) {
+                if (!touchesJson(watchService.take())) {
+                    continue;
+                }
+                WatchKey more;
+                while ((more = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    touchesJson(more);
+                }
+                reload();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.error("Configuration watcher failed", e);
+        }
+        logger.info("Stopped watching {}", configDir);
+    }
+
+    /** Consumes the events of {@code key} and tells whether any of them concerns a JSON file. */
+    private static boolean touchesJson(WatchKey key) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                || (event.context() instanceof Path path && path.toString().endsWith(".json"))) {
+                relevant = true;
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+
+    private void reload() {
+        logger.info("Configuration changed, reloading classifiers");
+        try {
+            dispatcher.replaceClassifiers(loader.load());
+        } catch (RuntimeException e) {
+            logger.error("Failed to reload classifiers, keeping the current ones", e);
+        }
+    }
+}
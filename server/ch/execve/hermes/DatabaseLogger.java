@@ -16,6 +16,7 @@ package ch.execve.hermes;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
+import jakarta.inject.Singleton;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -23,16 +24,122 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Manages logging of dispatched emails to a SQLite database. */
+/**
+ * Manages logging of dispatched emails to a SQLite database.
+ *
+ * <p>The single JDBC connection is shared by all client handlers, so access to it is serialized.
+ * The database is always in WAL mode, so readers such as {@link DispatchLogReader} never block it.
+ *
+ * <p>With a {@link Partitioning} other than NONE, records go to one table per period, e.g.
+ * {@code dispatch_log_202510}, and tables older than the retention are dropped when a new one is
+ * started. Tables left over from another partitioning are never dropped. The view
+ * {@code dispatch_log_all} always covers every table, including a {@code dispatch_log} table left
+ * over from before partitioning was enabled.
+ *
+ * <p>In async mode {@link #log} only enqueues the record. A single writer thread drains the queue
+ * and commits records in batches, so the delivery path never waits for the disk unless the queue
+ * is full.
+ */
+@Singleton
 class DatabaseLogger {
     private static final Logger logger = LoggerFactory.getLogger(DatabaseLogger.class);
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final String TABLE_PREFIX = "dispatch_log";
+    static final String VIEW = "dispatch_log_all";
     private final Connection connection;
+    private final Partitioning partitioning;
+    private final int retention;
+    // The table records are currently written to, and the prepared insert for it. Null after a
+    // failed write, so the next one sets the table up again.
+    private String currentTable;
+    private PreparedStatement insertStatement;
+    private final int batchSize;
+    private final long batchLatencyNanos;
+    private final BlockingQueue<LogRecord> queue;
+    private final Thread writer;
+    // Set once by close(); log() checks it and queues its record under the read lock.
+    private boolean closed = false;
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private final LongAdder records;
+    private final LongAdder errors;
+    private final LatencyHistogram writeLatency;
+
+    private record LogRecord(
+        Timestamp timestamp,
+        String messageId,
+        String returnPath,
+        String from,
+        String subject,
+        String classifier,
+        String inboxPath) {}
+
+    // Enqueued by close() to tell the writer thread to flush and exit.
+    private static final LogRecord END_OF_QUEUE = new LogRecord(null, null, null, null, null, null, null);
+
+    /** How the dispatch log is split into tables by the time records were written, in UTC. */
+    enum Partitioning {
+        NONE(TABLE_PREFIX),
+        DAY(TABLE_PREFIX + "_\\d{8}"),
+        WEEK(TABLE_PREFIX + "_\\d{4}w\\d{2}"),
+        MONTH(TABLE_PREFIX + "_\\d{6}");
+
+        private final Pattern tableName;
+
+        Partitioning(String tableName) {
+            this.tableName = Pattern.compile(tableName);
+        }
+
+        /** Whether {@code table} is named like the tables of this partitioning. */
+        boolean names(String table) {
+            return tableName.matcher(table).matches();
+        }
+
+        /** The table for records written at {@code time}. Suffixes sort in time order. */
+        String table(Instant time) {
+            LocalDate date = LocalDate.ofInstant(time, ZoneOffset.UTC);
+            return switch (this) {
+                case NONE -> TABLE_PREFIX;
+                case DAY -> TABLE_PREFIX + "_" + date.format(DateTimeFormatter.BASIC_ISO_DATE);
+                case WEEK -> String.format(
+                    "%s_%dw%02d",
+                    TABLE_PREFIX,
+                    date.get(IsoFields.WEEK_BASED_YEAR),
+                    date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+                case MONTH -> String.format("%s_%d%02d", TABLE_PREFIX, date.getYear(), date.getMonthValue());
+            };
+        }
+
+        /** The table of the period {@code periods} periods before the one {@code time} falls in. */
+        String tableBefore(Instant time, int periods) {
+            LocalDate date = LocalDate.ofInstant(time, ZoneOffset.UTC);
+            LocalDate earlier = switch (this) {
+                case NONE -> date;
+                case DAY -> date.minusDays(periods);
+                case WEEK -> date.minusWeeks(periods);
+                case MONTH -> date.minusMonths(periods);
+            };
+            return table(earlier.atStartOfDay(ZoneOffset.UTC).toInstant());
+        }
+    }
 
     private static final String CREATE_TABLE_SQL =
-        "CREATE TABLE IF NOT EXISTS dispatch_log ("
+        "CREATE TABLE IF NOT EXISTS %s ("
             + "id INTEGER PRIMARY KEY AUTOINCREMENT,"
             + "timestamp DATETIME DEFAULT CURRENT_TIMESTAMP,"
             + "message_id TEXT,"
@@ -43,22 +150,66 @@ class DatabaseLogger {
             + "returned_inbox_path TEXT"
             + ");";
 
+    // Reports filter on time, on the classifier and on the sender.
+    private static final List<String> INDEXED_COLUMNS = List.of("timestamp", "matching_classifier", "from_address");
+
     private static final String INSERT_LOG_SQL =
-        "INSERT INTO dispatch_log(timestamp, message_id, return_path, from_address, subject, matching_classifier, returned_inbox_path) "
+        "INSERT INTO %s(timestamp, message_id, return_path, from_address, subject, matching_classifier, returned_inbox_path) "
             + "VALUES(?,?,?,?,?,?,?);";
 
     @Inject
-    DatabaseLogger(@Named("databasePath") String databasePath) {
+    DatabaseLogger(
+        @Named("databasePath") String databasePath,
+        @Named("databaseAsync") boolean async,
+        @Named("databaseBatchSize") int batchSize,
+        @Named("databaseBatchLatencyMs") int batchLatencyMs,
+        @Named("databasePartitioning") Partitioning partitioning,
+        @Named("databaseRetention") int retention,
+        Metrics metrics) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1, got " + batchSize);
+        }
+        if (retention < 0) {
+            throw new IllegalArgumentException("retention must not be negative, got " + retention);
+        }
+        if (retention > 0 && partitioning == Partitioning.NONE) {
+            logger.warn("Dispatch log retention of {} periods is ignored without partitioning", retention);
+        }
+        this.partitioning = partitioning;
+        this.retention = retention;
+        this.batchSize = batchSize;
+        this.batchLatencyNanos = TimeUnit.MILLISECONDS.toNanos(batchLatencyMs);
+        this.records = metrics.counter("db.records");
+        this.errors = metrics.counter("db.errors");
+        this.writeLatency = metrics.histogram("db.write");
         try {
             String url = "jdbc:sqlite:" + databasePath;
             this.connection = DriverManager.getConnection(url);
             try (Statement stmt = connection.createStatement()) {
-                stmt.execute(CREATE_TABLE_SQL);
+                // WAL lets readers run alongside the writer, and a batch commit with a single
+                // sequential append.
+                stmt.execute("PRAGMA journal_mode=WAL;");
+                if (async) {
+                    stmt.execute("PRAGMA synchronous=NORMAL;");
+                }
             }
-            logger.info("Successfully connected to SQLite database at {}", databasePath);
+            useTable(partitioning.table(Instant.now()));
+            logger.info("Successfully connected to SQLite database at {} (partitioning: {})", databasePath, partitioning);
         } catch (SQLException e) {
             throw new RuntimeException("Failed to initialize SQLite database connection", e);
         }
+
+        if (async) {
+            this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+            // A daemon, so that it can't keep a server that failed to start alive; the server's
+            // shutdown hook calls close(), which flushes the queue before the JVM exits.
+            this.writer = Thread.ofPlatform().name("hermes-db-writer").daemon().start(this::drainQueue);
+            metrics.gauge("db.queue", queue::size);
+            logger.info("Writing dispatch log asynchronously (batch size {}, max latency {} ms)", batchSize, batchLatencyMs);
+        } else {
+            this.queue = null;
+            this.writer = null;
+        }
     }
 
     public void log(
@@ -68,31 +219,193 @@ class DatabaseLogger {
         String subject,
         String classifier,
         String inboxPath) {
-        try (PreparedStatement pstmt = connection.prepareStatement(INSERT_LOG_SQL)) {
-            pstmt.setTimestamp(1, Timestamp.from(Instant.now()));
-            pstmt.setString(2, messageId);
-            pstmt.setString(3, returnPath);
-            pstmt.setString(4, from);
-            
-            // Truncate subject if it's too long
-            String truncatedSubject = (subject != null && subject.length() > 255) ? subject.substring(0, 255) : subject;
-            pstmt.setString(5, truncatedSubject);
-            
-            pstmt.setString(6, classifier);
-            pstmt.setString(7, inboxPath);
-            pstmt.executeUpdate();
+        // Truncate subject if it's too long
+        String truncatedSubject = (subject != null && subject.length() > 255) ? subject.substring(0, 255) : subject;
+        var record = new LogRecord(
+            Timestamp.from(Instant.now()), messageId, returnPath, from, truncatedSubject, classifier, inboxPath);
+
+        // Held until the record is queued, so close() can't stop the writer in between.
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                logger.warn("Dropping dispatch log record for {}: logger is closed", messageId);
+                return;
+            }
+            if (queue == null) {
+                writeBatch(List.of(record));
+                return;
+            }
+            // Blocks only when the writer has fallen QUEUE_CAPACITY records behind.
+            queue.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while queueing dispatch log record for {}", messageId);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    /** Writer thread loop: collects up to batchSize records, waiting at most batchLatency for more. */
+    private void drainQueue() {
+        var batch = new ArrayList<LogRecord>(batchSize);
+        boolean running = true;
+        while (running) {
+            try {
+                LogRecord first = queue.take();
+                long deadline = System.nanoTime() + batchLatencyNanos;
+                LogRecord next = first;
+                while (true) {
+                    if (next == END_OF_QUEUE) {
+                        running = false;
+                        break;
+                    }
+                    batch.add(next);
+                    if (batch.size() >= batchSize) {
+                        break;
+                    }
+                    next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                logger.warn("Dispatch log writer interrupted, flushing {} pending records", queue.size());
+                queue.drainTo(batch);
+                batch.remove(END_OF_QUEUE);
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private synchronized void writeBatch(List<LogRecord> batch) {
+        long start = System.nanoTime();
+        try {
+            connection.setAutoCommit(false);
+            for (LogRecord record : batch) {
+                String table = partitioning.table(record.timestamp().toInstant());
+                if (!table.equals(currentTable)) {
+                    if (insertStatement != null) {
+                        insertStatement.executeBatch();
+                    }
+                    useTable(table);
+                }
+                insertStatement.setTimestamp(1, record.timestamp());
+                insertStatement.setString(2, record.messageId());
+                insertStatement.setString(3, record.returnPath());
+                insertStatement.setString(4, record.from());
+                insertStatement.setString(5, record.subject());
+                insertStatement.setString(6, record.classifier());
+                insertStatement.setString(7, record.inboxPath());
+                insertStatement.addBatch();
+            }
+            insertStatement.executeBatch();
+            connection.commit();
+            records.add(batch.size());
         } catch (SQLException e) {
-            logger.error("Failed to write to dispatch_log table", e);
+            errors.add(batch.size());
+            logger.error("Failed to write {} records to {} table", batch.size(), currentTable, e);
+            currentTable = null;
+            try {
+                if (insertStatement != null) {
+                    insertStatement.clearBatch();
+                }
+                connection.rollback();
+            } catch (SQLException f) {
+                logger.error("Failed to roll back dispatch_log transaction", f);
+            }
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.error("Failed to restore autocommit on SQLite connection", e);
+            }
+            writeLatency.recordSince(start);
         }
     }
 
+    /**
+     * Switches to {@code table}, creating it if needed. Also drops the tables that fell out of the
+     * retention, makes sure every remaining table is indexed and brings the view up to date, since
+     * the set of tables may have changed. Runs in the caller's transaction, if any.
+     */
+    private void useTable(String table) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(String.format(CREATE_TABLE_SQL, table));
+            List<String> tables = new ArrayList<>();
+            try (var rs = stmt.executeQuery(
+                "SELECT name FROM sqlite_master WHERE type = 'table' "
+                    + "AND (name = '" + TABLE_PREFIX + "' OR name GLOB '" + TABLE_PREFIX + "_[0-9]*') ORDER BY name;")) {
+                while (rs.next()) {
+                    tables.add(rs.getString(1));
+                }
+            }
+            if (partitioning != Partitioning.NONE && retention > 0) {
+                String oldestKept = partitioning.tableBefore(Instant.now(), retention - 1);
+                // Only tables of the current partitioning are compared: suffixes of other formats,
+                // and the unpartitioned table, don't sort in time order against them and are kept.
+                for (var it = tables.iterator(); it.hasNext(); ) {
+                    String name = it.next();
+                    if (partitioning.names(name) && !name.equals(table) && name.compareTo(oldestKept) < 0) {
+                        stmt.execute("DROP TABLE " + name + ";");
+                        it.remove();
+                        logger.info("Dropped dispatch log table {}, older than {} periods", name, retention);
+                    }
+                }
+            }
+            // Also indexes tables created before their indexes were, e.g. an old unpartitioned one.
+            for (String t : tables) {
+                for (String column : INDEXED_COLUMNS) {
+                    stmt.execute(String.format("CREATE INDEX IF NOT EXISTS %s_%s ON %s(%s);", t, column, t, column));
+                }
+            }
+            stmt.execute("DROP VIEW IF EXISTS " + VIEW + ";");
+            stmt.execute("CREATE VIEW " + VIEW + " AS " + String.join(" UNION ALL ", tables.stream()
+                .map(t -> "SELECT timestamp, message_id, return_path, from_address, subject, "
+                    + "matching_classifier, returned_inbox_path FROM " + t)
+                .toList()) + ";");
+        }
+        if (insertStatement != null) {
+            insertStatement.close();
+        }
+        insertStatement = connection.prepareStatement(String.format(INSERT_LOG_SQL, table));
+        currentTable = table;
+    }
+
+    /** Flushes pending records (in async mode) and closes the connection. */
     public void close() {
+        // Waits for log() calls that are queueing a record; the writer keeps draining meanwhile.
+        closeLock.writeLock().lock();
         try {
-            if (connection != null) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        if (writer != null) {
+            try {
+                // Nothing is queued after this, so the writer flushes everything before it exits.
+                queue.put(END_OF_QUEUE);
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while flushing dispatch log", e);
+            }
+        }
+        synchronized (this) {
+            try {
+                if (insertStatement != null) {
+                    insertStatement.close();
+                }
                 connection.close();
+            } catch (SQLException e) {
+                logger.error("Failed to close SQLite connection", e);
             }
-        } catch (SQLException e) {
-            logger.error("Failed to close SQLite connection", e);
         }
     }
-}
\ No newline at end of file
+}
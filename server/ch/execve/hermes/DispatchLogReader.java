@@ -0,0 +1,139 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reporting queries over the dispatch log, on a small pool of read-only connections of their own.
+ *
+ * <p>The log is in WAL mode, so these queries read a snapshot and neither wait for nor hold up the
+ * {@link DatabaseLogger} writer. They go through the {@code dispatch_log_all} view and so cover all
+ * partitions.
+ */
+class DispatchLogReader implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(DispatchLogReader.class);
+    // SQLITE_OPEN_READONLY: the file must exist and is never written to.
+    private static final String OPEN_READ_ONLY = "1";
+
+    /** The number of messages one sender sent that ended up with a classifier. */
+    record SenderCount(String from, long count) {}
+
+    private final String url;
+    private final BlockingQueue<Connection> idle;
+    private final List<Connection> all = new ArrayList<>();
+    private final int poolSize;
+
+    DispatchLogReader(String databasePath, int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("poolSize must be at least 1, got " + poolSize);
+        }
+        this.url = "jdbc:sqlite:" + databasePath;
+        this.poolSize = poolSize;
+        this.idle = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    /** Messages per classifier since {@code since}, most frequent first. Unmatched messages count under "". */
+    Map<String, Long> countByClassifier(Instant since) throws SQLException {
+        Connection connection = borrow();
+        try (PreparedStatement stmt = connection.prepareStatement(
+            "SELECT COALESCE(matching_classifier, ''), COUNT(*) FROM " + DatabaseLogger.VIEW
+                + " WHERE timestamp >= ? GROUP BY 1 ORDER BY 2 DESC;")) {
+            stmt.setTimestamp(1, Timestamp.from(since));
+            Map<String, Long> counts = new LinkedHashMap<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(rs.getString(1), rs.getLong(2));
+                }
+            }
+            return counts;
+        } finally {
+            idle.add(connection);
+        }
+    }
+
+    /** The {@code limit} senders with the most messages matched by {@code classifier} since {@code since}. */
+    List<SenderCount> topSenders(String classifier, Instant since, int limit) throws SQLException {
+        Connection connection = borrow();
+        try (PreparedStatement stmt = connection.prepareStatement(
+            "SELECT from_address, COUNT(*) FROM " + DatabaseLogger.VIEW
+                + " WHERE matching_classifier = ? AND timestamp >= ? GROUP BY from_address ORDER BY 2 DESC LIMIT ?;")) {
+            stmt.setString(1, classifier);
+            stmt.setTimestamp(2, Timestamp.from(since));
+            stmt.setInt(3, limit);
+            List<SenderCount> senders = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    senders.add(new SenderCount(rs.getString(1), rs.getLong(2)));
+                }
+            }
+            return senders;
+        } finally {
+            idle.add(connection);
+        }
+    }
+
+    /** Takes an idle connection, opens a new one while the pool is not full, or else waits. */
+    private Connection borrow() throws SQLException {
+        Connection connection = idle.poll();
+        if (connection != null) {
+            return connection;
+        }
+        synchronized (all) {
+            if (all.size() < poolSize) {
+                var properties = new Properties();
+                properties.setProperty("open_mode", OPEN_READ_ONLY);
+                connection = DriverManager.getConnection(url, properties);
+                all.add(connection);
+                return connection;
+            }
+        }
+        try {
+            return idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (all) {
+            for (Connection connection : all) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    logger.error("Failed to close read-only SQLite connection", e);
+                }
+            }
+            all.clear();
+        }
+    }
+}
@@ -14,94 +14,352 @@
 
 package ch.execve.hermes;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import ch.execve.hermes.classifier.Classifier;
+import ch.execve.hermes.classifier.Deadline;
+import ch.execve.hermes.ClassificationCache.Classification;
+import ch.execve.hermes.classifier.ParsedMessage;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
+import jakarta.inject.Provider;
+import jakarta.inject.Singleton;
 import jakarta.mail.MessagingException;
 import jakarta.mail.Message;
-import java.io.File;
-import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.Optional;
 
-/** Dispatches email to Classifiers. */
+/**
+ * Dispatches email to Classifiers. Safe to call from concurrent client handlers.
+ *
+ * <p>Each classifier call runs under a {@link Deadline}. A classifier that overruns it is treated
+ * as not matching, so one pathological pattern cannot hold a delivery past the client's timeout.
+ * Such an answer is not cached, since the classifier may well match when given the time.
+ */
+@Singleton
 class Dispatcher {
-    private final ImmutableMap<Classifier, String> classifiers;
-    private final DatabaseLogger dbLogger;
+    /** The outcome of one classifier on one message. UNDECIDED if it overran or failed. */
+    private enum Verdict { MATCH, NO_MATCH, UNDECIDED }
+
+    /**
+     * Where a message goes, and whether an earlier copy of it has already been written there by the
+     * server. The message is null if it couldn't be read.
+     */
+    record Result(String folder, boolean delivered, ParsedMessage message) {}
+
+    /** The metrics of one classifier, looked up once per configuration rather than per message. */
+    private record ClassifierMetrics(LatencyHistogram latency, LongAdder matches, LongAdder overruns) {}
+
+    // Replaced as a whole when the configuration is reloaded; each dispatch reads it once.
+    private volatile ImmutableList<LoadedClassifier> classifiers;
+    // The metrics of the current classifiers, replaced along with them.
+    private volatile ImmutableMap<LoadedClassifier, ClassifierMetrics> classifierMetrics = ImmutableMap.of();
+    // Results for the current classifier set, if caching is enabled and possible for it.
+    private volatile Optional<ClassificationCache> cache = Optional.empty();
+    private final long cacheSize;
+    // 0 means classifiers may take as long as they like.
+    private final long deadlineNanos;
+    // Resolved on first dispatch, so tools that only classify never open the database.
+    private final Provider<DatabaseLogger> dbLogger;
+    private final DuplicateDetector duplicates;
+    // Runs classifiers concurrently when parallel evaluation is enabled, null otherwise.
+    private final ExecutorService classifierExecutor;
+    private final Metrics metrics;
+    private final LongAdder messages;
+    private final LatencyHistogram headerLatency;
+    private final LatencyHistogram dispatchLatency;
+    // One in this many dispatches is logged; 0 logs none.
+    private final int logSample;
     private static final Logger logger = LoggerFactory.getLogger(Dispatcher.class);
 
     @Inject
-    Dispatcher(@Named("configDir") String configDir, DatabaseLogger dbLogger) {
+    Dispatcher(
+        ClassifierLoader loader,
+        @Named("parallelClassifiers") boolean parallelClassifiers,
+        @Named("classificationCacheSize") long cacheSize,
+        @Named("classifierDeadlineMs") int deadlineMs,
+        Provider<DatabaseLogger> dbLogger,
+        DuplicateDetector duplicates,
+        @Named("dispatchLogSample") int logSample,
+        Metrics metrics) {
         this.dbLogger = dbLogger;
-        var builder = ImmutableMap.<Classifier, String>builder();
-        var mapper = new ObjectMapper()
-            .enable(JsonParser.Feature.ALLOW_YAML_COMMENTS);
-        var configFile = new File(configDir, "classifiers.json");
+        this.duplicates = duplicates;
+        this.logSample = logSample;
+        this.cacheSize = cacheSize;
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        this.metrics = metrics;
+        this.messages = metrics.counter("dispatch.messages");
+        this.headerLatency = metrics.histogram("parse.headers");
+        this.dispatchLatency = metrics.histogram("dispatch.total");
+        this.classifierExecutor = parallelClassifiers
+            ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("hermes-classifier-", 0).factory())
+            : null;
+        // Hit and miss counts are for the current classifier set; a reload starts them over.
+        metrics.gauge("cache.hits", () -> cache.map(c -> c.stats().hitCount()).orElse(0L));
+        metrics.gauge("cache.misses", () -> cache.map(c -> c.stats().missCount()).orElse(0L));
+        metrics.gauge("cache.evictions", () -> cache.map(c -> c.stats().evictionCount()).orElse(0L));
+        metrics.gauge("cache.size", () -> cache.map(ClassificationCache::size).orElse(0L));
+        metrics.section("rules", () -> RuleReport.format(classifiers));
+        useClassifiers(loader.load());
+    }
 
-        try {
-            List<ClassifierConfig> configs = mapper.readValue(configFile, new TypeReference<List<ClassifierConfig>>() {});
-            logger.info("Found {} classifier configurations.", configs.size());
-
-            for (var config : configs) {
-                logger.info("Loading classifier: {}", config.name());
-                // Use reflection to instantiate the specified classifier class
-                var implementation = Class.forName(config.implementation());
-                var constructor = implementation.getConstructor(String.class);
-                var classifierPath = new File(configDir, config.name() + ".json").getAbsolutePath();
-                var classifierInstance = (Classifier) constructor.newInstance(classifierPath);
-                builder.put(classifierInstance, config.destination());
-            }
-        } catch (IOException | ClassNotFoundException | NoSuchMethodException | InstantiationException |
-                 IllegalAccessException | InvocationTargetException e) {
-            throw new RuntimeException("Failed to load and instantiate classifiers from " + configFile.getAbsolutePath(), e);
+    /** Atomically replaces the classifier set. Messages already being dispatched use the old one. */
+    void replaceClassifiers(ImmutableList<LoadedClassifier> newClassifiers) {
+        cache.ifPresent(c -> logger.info("Discarding classification cache: {}", c.stats()));
+        useClassifiers(newClassifiers);
+        logger.info("Now using {} classifiers", newClassifiers.size());
+    }
+
+    private void useClassifiers(ImmutableList<LoadedClassifier> newClassifiers) {
+        this.classifierMetrics = newClassifiers.stream()
+            .distinct()
+            .collect(ImmutableMap.toImmutableMap(c -> c, this::resolveMetrics));
+        // The cache is published first; classify() ignores it until it matches the classifier set.
+        this.cache = ClassificationCache.create(newClassifiers, cacheSize);
+        this.classifiers = newClassifiers;
+        if (cacheSize > 0 && cache.isEmpty()) {
+            logger.warn("Not caching classifications: some classifiers don't declare the headers they read");
         }
+    }
+
+    /** The current classifier set, in config order. */
+    ImmutableList<LoadedClassifier> classifiers() {
+        return classifiers;
+    }
 
-        this.classifiers = builder.build();
+    /** Whether every configured classifier can decide from the headers alone. */
+    boolean headersOnly() {
+        return classifiers.stream().map(LoadedClassifier::classifier).noneMatch(Classifier::needsBody);
     }
 
-    String dispatch(Message message) {
+    Result dispatch(Message message) {
+        ParsedMessage parsed;
         try {
-            Optional<Classifier> matchingClassifier = classifiers
-                .keySet()
-                .stream()
-                .filter(c -> c.classify(message))
-                .findFirst();
-
-            String returnedInboxPath = matchingClassifier.map(classifiers::get).orElse("INBOX");
-            String classifierName = matchingClassifier.map(c -> c.getClass().getName()).orElse("none");
-
-            // Safely get headers for logging
-            String messageId = getHeader(message, "Message-ID").orElse("<null>");
-            String returnPath = getHeader(message, "Return-Path").orElse("<null>");
-            String from = getHeader(message, "From").orElse("<null>");
-            String subject = getHeader(message, "Subject").orElse("<null>");
-
-            dbLogger.log(messageId, returnPath, from, subject, classifierName, returnedInboxPath);
-
-            logger.info(
-                "Classified message from '{}', subject '{}' as '{}'",
-                from,
-                subject,
-                returnedInboxPath);
-            return returnedInboxPath;
+            long start = System.nanoTime();
+            parsed = ParsedMessage.of(message);
+            headerLatency.recordSince(start);
         } catch (MessagingException e) {
             logger.error("Failed to read message properties", e);
-            return "INBOX.hermes-error";
+            return new Result("INBOX.hermes-error", false, null);
+        }
+        return dispatch(parsed);
+    }
+
+    Result dispatch(ParsedMessage message) {
+        long start = System.nanoTime();
+        messages.increment();
+        // A retry of a message that was already answered, or is being classified: it is logged once.
+        Optional<DuplicateDetector.Seen> previous = duplicates.lookup(message);
+        if (previous.isPresent()) {
+            logDispatch(message, "-", previous.get().destination(), true, start);
+            dispatchLatency.recordSince(start);
+            return new Result(previous.get().destination(), previous.get().delivered(), message);
+        }
+        Optional<LoadedClassifier> matchingClassifier;
+        try {
+            matchingClassifier = classify(message);
+        } catch (RuntimeException e) {
+            // Lets copies waiting for this result classify themselves.
+            duplicates.record(message, null);
+            throw e;
+        }
+        matchingClassifier.ifPresent(c -> metricsOf(c).matches().increment());
+
+        String returnedInboxPath = matchingClassifier.map(LoadedClassifier::destination).orElse("INBOX");
+        String classifierName = matchingClassifier.map(c -> c.classifier().getClass().getName()).orElse("none");
+        duplicates.record(message, returnedInboxPath);
+
+        String messageId = message.rawHeader("Message-ID").orElse("<null>");
+        String returnPath = message.rawHeader("Return-Path").orElse("<null>");
+        String from = message.rawHeader("From").orElse("<null>");
+        String subject = message.rawHeader("Subject").orElse("<null>");
+
+        dbLogger.get().log(messageId, returnPath, from, subject, classifierName, returnedInboxPath);
+
+        logDispatch(message, matchingClassifier.map(LoadedClassifier::name).orElse("none"), returnedInboxPath, false, start);
+        dispatchLatency.recordSince(start);
+        return new Result(returnedInboxPath, false, message);
+    }
+
+    /**
+     * Reports whether the server managed to write the message of {@code result} to its folder, so
+     * that copies of it are only answered as delivered once it is really there.
+     */
+    void delivered(Result result, boolean success) {
+        if (result.message() != null) {
+            duplicates.delivered(result.message(), result.folder(), success);
         }
     }
 
-    private Optional<String> getHeader(Message message, String name) throws MessagingException {
-        String[] headers = message.getHeader(name);
-        if (headers != null && headers.length > 0) {
-            return Optional.of(headers[0]);
+    /**
+     * Logs the outcome of a dispatch as one line of key=value pairs, for one in {@code logSample}
+     * messages. Nothing is formatted for messages that are not sampled.
+     */
+    private void logDispatch(ParsedMessage message, String classifier, String destination, boolean duplicate, long start) {
+        if (logSample <= 0
+            || !logger.isInfoEnabled()
+            || (logSample > 1 && ThreadLocalRandom.current().nextInt(logSample) != 0)) {
+            return;
         }
-        return Optional.empty();
+        logger.info(
+            "dispatch message_id={} from={} subject={} classifier={} destination={} duplicate={} micros={}",
+            quote(message.rawHeader("Message-ID").orElse("")),
+            quote(message.rawHeader("From").orElse("")),
+            quote(message.rawHeader("Subject").orElse("")),
+            classifier,
+            quote(destination),
+            duplicate,
+            TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    }
+
+    /** Quotes a header value so that the record stays on one line and splits unambiguously. */
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < ' ') {
+                // Folded header lines and tabs.
+                quoted.append(' ');
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /** Returns the first classifier in config order that matches, without logging anything. */
+    Optional<LoadedClassifier> classify(ParsedMessage message) {
+        ImmutableList<LoadedClassifier> current = classifiers;
+        Optional<ClassificationCache> currentCache = cache;
+        if (currentCache.isPresent() && currentCache.get().covers(current)) {
+            return currentCache.get().get(message, () -> runClassifiers(current, message));
+        }
+        return runClassifiers(current, message).match();
+    }
+
+    private Classification runClassifiers(ImmutableList<LoadedClassifier> current, ParsedMessage message) {
+        if (classifierExecutor != null && current.size() > 1) {
+            return firstMatchInParallel(current, message);
+        }
+        boolean complete = true;
+        for (LoadedClassifier classifier : current) {
+            switch (timedClassify(classifier, message)) {
+                case MATCH -> {
+                    return new Classification(Optional.of(classifier), complete);
+                }
+                case NO_MATCH -> {}
+                // A classifier earlier in the order might have matched given the time.
+                case UNDECIDED -> complete = false;
+            }
+        }
+        return new Classification(Optional.empty(), complete);
+    }
+
+    /**
+     * Runs one classifier under the deadline and records how long it took under its config name.
+     * An overrun or a failure is UNDECIDED, so that the cache doesn't remember it as a no match.
+     * The other classifiers still get their say, in sequential and parallel mode alike.
+     */
+    private Verdict timedClassify(LoadedClassifier classifier, ParsedMessage message) {
+        long start = System.nanoTime();
+        Deadline.Scope deadline = Deadline.start(deadlineNanos);
+        try {
+            return classifier.classifier().classify(message) ? Verdict.MATCH : Verdict.NO_MATCH;
+        } catch (Deadline.ExceededException e) {
+            overrun(classifier, message);
+            return Verdict.UNDECIDED;
+        } catch (RuntimeException e) {
+            logger.error("Classifier {} failed, treating as undecided", classifier.name(), e);
+            return Verdict.UNDECIDED;
+        } finally {
+            deadline.close();
+            metricsOf(classifier).latency().recordSince(start);
+        }
+    }
+
+    /**
+     * Starts all classifiers at once and waits for their results in config order. The first match
+     * decides, and classifiers that come after it are cancelled.
+     */
+    private Classification firstMatchInParallel(List<LoadedClassifier> ordered, ParsedMessage message) {
+        List<Future<Verdict>> results = new ArrayList<>(ordered.size());
+        // Classifiers that never check their deadline are abandoned (and interrupted) once it has
+        // passed, with a little slack for those that do to notice it themselves.
+        long giveUpAt = deadlineNanos > 0 ? System.nanoTime() + deadlineNanos + deadlineNanos / 10 : 0;
+        for (LoadedClassifier classifier : ordered) {
+            results.add(classifierExecutor.submit(() -> timedClassify(classifier, message)));
+        }
+        boolean complete = true;
+        try {
+            for (int i = 0; i < ordered.size(); i++) {
+                switch (verdict(results.get(i), ordered.get(i), message, giveUpAt)) {
+                    case MATCH -> {
+                        return new Classification(Optional.of(ordered.get(i)), complete);
+                    }
+                    case NO_MATCH -> {}
+                    case UNDECIDED -> complete = false;
+                }
+            }
+            return new Classification(Optional.empty(), complete);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for classifiers");
+            return new Classification(Optional.empty(), false);
+        } finally {
+            // No-op for classifiers that already finished.
+            results.forEach(result -> result.cancel(true));
+        }
+    }
+
+    private Verdict verdict(Future<Verdict> result, LoadedClassifier classifier, ParsedMessage message, long giveUpAt)
+        throws InterruptedException {
+        try {
+            return giveUpAt == 0
+                ? result.get()
+                : result.get(Math.max(0, giveUpAt - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            // Only errors get here; timedClassify() already turned exceptions into UNDECIDED.
+            logger.error("Classifier {} failed, treating as undecided", classifier.name(), e.getCause());
+            return Verdict.UNDECIDED;
+        } catch (TimeoutException e) {
+            overrun(classifier, message);
+            return Verdict.UNDECIDED;
+        }
+    }
+
+    private ClassifierMetrics metricsOf(LoadedClassifier classifier) {
+        ClassifierMetrics resolved = classifierMetrics.get(classifier);
+        // Only a dispatch that started before a reload finds its classifier gone.
+        return resolved != null ? resolved : resolveMetrics(classifier);
+    }
+
+    private ClassifierMetrics resolveMetrics(LoadedClassifier classifier) {
+        String prefix = "classifier." + classifier.name();
+        return new ClassifierMetrics(
+            metrics.histogram(prefix + ".latency"),
+            metrics.counter(prefix + ".matches"),
+            metrics.counter(prefix + ".overruns"));
+    }
+
+    private void overrun(LoadedClassifier classifier, ParsedMessage message) {
+        metricsOf(classifier).overruns().increment();
+        logger.warn(
+            "Classifier {} exceeded its {} ms deadline on message {}, treating as no match",
+            classifier.name(),
+            TimeUnit.NANOSECONDS.toMillis(deadlineNanos),
+            message.rawHeader("Message-ID").orElse("<null>"));
     }
 }
@@ -0,0 +1,460 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import ch.execve.hermes.classifier.ParsedMessage;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers the destination of recently dispatched messages, so that a message an MTA delivers
+ * again (typically after a client timeout) gets the same answer without being classified or
+ * logged a second time.
+ *
+ * <p>Messages are identified by their Message-ID or, without one, by a hash of From, To, Subject
+ * and Date; messages with neither are never treated as duplicates. Only 64-bit fingerprints are
+ * kept, in two generations that each cover one window: lookups check both, and when the current
+ * generation is a window old, the previous one is dropped. An entry is therefore remembered for
+ * between one and two windows. The generations are written to the state file, if any, on every
+ * rotation and on {@link #close}, and read back at startup.
+ *
+ * <p>A copy that arrives while the first is still being classified, the usual case after a client
+ * timeout, waits for that classification instead of running its own. It waits at most the
+ * classifier deadline, so a stuck first attempt can't hold up its retries.
+ *
+ * <p>With server-side delivery, an entry only counts as delivered once a copy has actually been
+ * written to its folder, see {@link #delivered}; copies that arrive meanwhile wait for that too. A
+ * duplicate of a delivered message is answered as delivered without writing it again; any other
+ * duplicate is written again. Without server-side delivery the client is only told the folder, and
+ * delivers the copy itself.
+ */
+@Singleton
+class DuplicateDetector {
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateDetector.class);
+    private static final int MAGIC = 0x48445550; // "HDUP"
+    private static final int VERSION = 2;
+    private static final HashFunction FINGERPRINT = Hashing.farmHashFingerprint64();
+    // How long a copy waits for the first when classifiers have no deadline.
+    private static final long DEFAULT_WAIT_MILLIS = 1000;
+
+    private final long windowMillis;
+    private final long waitMillis;
+    private final Path stateFile;
+    private final boolean awaitDelivery;
+    private final LongAdder duplicates;
+    // Destinations are few; generations store an index into this list instead of the name, shifted
+    // left by one to make room for the delivered bit.
+    private final List<String> destinations = new ArrayList<>();
+    private Generation current;
+    private Generation previous;
+    // Messages being classified (and delivered) right now, so that a copy arriving meanwhile waits
+    // for the outcome.
+    private final Map<Long, CompletableFuture<Seen>> inFlight = new HashMap<>();
+    // Saves run one at a time, and a snapshot never replaces a newer one that was already saved.
+    private final Object saveLock = new Object();
+    private long snapshots = 0;
+    private long savedSnapshot = 0;
+    private Thread pendingSave;
+
+    /** Where an earlier copy of a message went, and whether the server has written it there. */
+    record Seen(String destination, boolean delivered) {}
+
+    /**
+     * An open-addressing table from fingerprint to destination index. 0 marks an empty slot, so a
+     * fingerprint of 0 is stored as 1.
+     */
+    private static final class Generation {
+        final long startedAt;
+        long[] keys = new long[1024];
+        short[] values = new short[1024];
+        int size = 0;
+
+        Generation(long startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = (int) key & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return -1;
+        }
+
+        void put(long key, int value) {
+            if (size * 2 >= keys.length) {
+                long[] oldKeys = keys;
+                short[] oldValues = values;
+                keys = new long[oldKeys.length * 2];
+                values = new short[oldKeys.length * 2];
+                size = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != 0) {
+                        put(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+            int mask = keys.length - 1;
+            int slot = (int) key & mask;
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == 0) {
+                size++;
+            }
+            keys[slot] = key;
+            values[slot] = (short) value;
+        }
+    }
+
+    @Inject
+    DuplicateDetector(
+        @Named("duplicateWindowSeconds") int windowSeconds,
+        @Named("duplicateStateFile") String stateFile,
+        @Named("classifierDeadlineMs") int deadlineMs,
+        MaildirDelivery maildirDelivery,
+        Metrics metrics) {
+        this.windowMillis = Duration.ofSeconds(windowSeconds).toMillis();
+        this.waitMillis = deadlineMs > 0 ? deadlineMs : DEFAULT_WAIT_MILLIS;
+        this.stateFile = stateFile.isEmpty() ? null : Path.of(stateFile);
+        this.awaitDelivery = maildirDelivery.enabled();
+        this.duplicates = metrics.counter("dispatch.duplicates");
+        long now = System.currentTimeMillis();
+        this.current = new Generation(now);
+        this.previous = new Generation(now - windowMillis);
+        if (enabled()) {
+            metrics.gauge("duplicates.entries", this::size);
+            if (this.stateFile != null) {
+                load(now);
+            }
+            logger.info("Suppressing duplicate messages seen within the last {} s", windowSeconds);
+        }
+    }
+
+    boolean enabled() {
+        return windowMillis > 0;
+    }
+
+    /**
+     * What became of an earlier copy of {@code message} within the window, if there was one. If a
+     * copy is being classified or delivered right now, waits for the outcome, but no longer than
+     * the classifier deadline. Otherwise the caller
+     * is expected to classify the message and must then call {@link #record}, even if that fails,
+     * and with server-side delivery also {@link #delivered}.
+     */
+    Optional<Seen> lookup(ParsedMessage message) {
+        if (!enabled()) {
+            return Optional.empty();
+        }
+        OptionalLong key = key(message);
+        if (key.isEmpty()) {
+            return Optional.empty();
+        }
+        CompletableFuture<Seen> first;
+        synchronized (this) {
+            rotateIfDue(System.currentTimeMillis());
+            first = inFlight.get(key.getAsLong());
+            if (first == null) {
+                int value = current.get(key.getAsLong());
+                if (value < 0) {
+                    value = previous.get(key.getAsLong());
+                }
+                if (value >= 0) {
+                    duplicates.increment();
+                    return Optional.of(new Seen(destinations.get(value >> 1), (value & 1) != 0));
+                }
+                inFlight.put(key.getAsLong(), new CompletableFuture<>());
+                return Optional.empty();
+            }
+        }
+        // The MTA retried while the first attempt was still being handled.
+        Optional<Seen> seen;
+        try {
+            seen = Optional.ofNullable(first.get(waitMillis, TimeUnit.MILLISECONDS));
+        } catch (TimeoutException | ExecutionException e) {
+            // The first attempt is stuck; don't let it hold up this copy, nor any later one.
+            logger.warn("Gave up waiting {} ms for an earlier copy of a message, classifying it again", waitMillis);
+            abandon(key.getAsLong(), first);
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+        seen.ifPresent(d -> duplicates.increment());
+        return seen;
+    }
+
+    /** Releases the copies waiting for {@code first}; they are then classified themselves. */
+    private void abandon(long key, CompletableFuture<Seen> first) {
+        synchronized (this) {
+            inFlight.remove(key, first);
+        }
+        first.complete(null);
+    }
+
+    /**
+     * Remembers that {@code message} went to {@code destination}. A null destination means
+     * classification failed; copies waiting in {@link #lookup} are then classified themselves.
+     * Without server-side delivery, the waiting copies get the destination right away; with it,
+     * they wait for {@link #delivered}.
+     */
+    void record(ParsedMessage message, String destination) {
+        if (!enabled()) {
+            return;
+        }
+        OptionalLong key = key(message);
+        if (key.isEmpty()) {
+            return;
+        }
+        CompletableFuture<Seen> waiting = null;
+        synchronized (this) {
+            if (destination != null) {
+                rotateIfDue(System.currentTimeMillis());
+                int value = destinationIndex(destination) << 1;
+                // Keeps the delivered bit of a copy that was delivered in the meantime.
+                if (current.get(key.getAsLong()) != (value | 1)) {
+                    current.put(key.getAsLong(), value);
+                }
+            }
+            if (destination == null || !awaitDelivery) {
+                waiting = inFlight.remove(key.getAsLong());
+            }
+        }
+        if (waiting != null) {
+            waiting.complete(destination == null ? null : new Seen(destination, false));
+        }
+    }
+
+    /**
+     * Remembers whether the server managed to write {@code message} to {@code destination}, and
+     * hands the outcome to copies waiting in {@link #lookup}. Only a delivered message is answered
+     * as delivered later on; after a failure, the next copy is written again.
+     */
+    void delivered(ParsedMessage message, String destination, boolean success) {
+        if (!enabled()) {
+            return;
+        }
+        OptionalLong key = key(message);
+        if (key.isEmpty()) {
+            return;
+        }
+        CompletableFuture<Seen> waiting;
+        synchronized (this) {
+            if (success) {
+                rotateIfDue(System.currentTimeMillis());
+                current.put(key.getAsLong(), destinationIndex(destination) << 1 | 1);
+            }
+            waiting = inFlight.remove(key.getAsLong());
+        }
+        if (waiting != null) {
+            waiting.complete(new Seen(destination, success));
+        }
+    }
+
+    private static OptionalLong key(ParsedMessage message) {
+        Optional<String> messageId = message.rawHeader("Message-ID").map(String::strip).filter(id -> !id.isEmpty());
+        if (messageId.isPresent()) {
+            return OptionalLong.of(fingerprint("id\0" + messageId.get()));
+        }
+        Optional<String> date = message.rawHeader("Date");
+        if (date.isEmpty()) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(fingerprint(String.join(
+            "\0",
+            "headers",
+            message.rawHeader("From").orElse(""),
+            message.rawHeader("To").orElse(""),
+            message.rawHeader("Subject").orElse(""),
+            date.get())));
+    }
+
+    private static long fingerprint(String key) {
+        long fingerprint = FINGERPRINT.hashString(key, StandardCharsets.UTF_8).asLong();
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    private int destinationIndex(String destination) {
+        int index = destinations.indexOf(destination);
+        if (index < 0) {
+            if (destinations.size() == Short.MAX_VALUE >> 1) {
+                // Not reachable with a sane configuration; start over rather than overflow.
+                destinations.clear();
+                current = new Generation(current.startedAt);
+                previous = new Generation(previous.startedAt);
+            }
+            destinations.add(destination);
+            index = destinations.size() - 1;
+        }
+        return index;
+    }
+
+    private void rotateIfDue(long now) {
+        if (now - current.startedAt < windowMillis) {
+            return;
+        }
+        // After a long idle period both generations may have expired.
+        previous = now - current.startedAt < 2 * windowMillis ? current : new Generation(now - windowMillis);
+        current = new Generation(now);
+        if (stateFile != null) {
+            long snapshot = ++snapshots;
+            byte[] state = serialize();
+            pendingSave = Thread.ofVirtual().name("hermes-duplicates-save").start(() -> save(snapshot, state));
+        }
+    }
+
+    private synchronized long size() {
+        return current.size + previous.size;
+    }
+
+    /** Writes the state file, if there is one. */
+    void close() {
+        if (enabled() && stateFile != null) {
+            long snapshot;
+            byte[] state;
+            Thread rotationSave;
+            synchronized (this) {
+                snapshot = ++snapshots;
+                state = serialize();
+                rotationSave = pendingSave;
+            }
+            if (rotationSave != null) {
+                try {
+                    rotationSave.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            save(snapshot, state);
+        }
+    }
+
+    private byte[] serialize() {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(destinations.size());
+            for (String destination : destinations) {
+                out.writeUTF(destination);
+            }
+            for (Generation generation : List.of(previous, current)) {
+                out.writeLong(generation.startedAt);
+                out.writeInt(generation.size);
+                for (int i = 0; i < generation.keys.length; i++) {
+                    if (generation.keys[i] != 0) {
+                        out.writeLong(generation.keys[i]);
+                        out.writeShort(generation.values[i]);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new AssertionError("Writing to memory failed", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void save(long snapshot, byte[] state) {
+        synchronized (saveLock) {
+            if (snapshot <= savedSnapshot) {
+                return;
+            }
+            Path tmp = null;
+            try {
+                tmp = Files.createTempFile(
+                    stateFile.toAbsolutePath().getParent(), stateFile.getFileName() + ".", ".tmp");
+                Files.write(tmp, state);
+                Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                savedSnapshot = snapshot;
+            } catch (IOException e) {
+                logger.error("Failed to save duplicate detector state to {}", stateFile, e);
+            } finally {
+                if (tmp != null) {
+                    try {
+                        Files.deleteIfExists(tmp);
+                    } catch (IOException e) {
+                        logger.warn("Could not remove {}", tmp, e);
+                    }
+                }
+            }
+        }
+    }
+
+    private synchronized void load(long now) {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateFile)))) {
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version != 1 && version != VERSION) {
+                logger.warn("Ignoring duplicate detector state {}: unknown format", stateFile);
+                return;
+            }
+            String[] names = new String[in.readInt()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = in.readUTF();
+            }
+            destinations.addAll(Arrays.asList(names));
+            Generation[] loaded = new Generation[2];
+            for (int g = 0; g < loaded.length; g++) {
+                loaded[g] = new Generation(in.readLong());
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    long key = in.readLong();
+                    short value = in.readShort();
+                    // Version 1 had no delivered bit; its entries are taken as not delivered.
+                    loaded[g].put(key, version == 1 ? value << 1 : value);
+                }
+            }
+            // Keep what is still within the window; rotateIfDue() ages it from here on.
+            if (now - loaded[1].startedAt < 2 * windowMillis) {
+                previous = now - loaded[0].startedAt < 2 * windowMillis ? loaded[0] : previous;
+                current = loaded[1];
+            }
+            logger.info("Loaded {} recent message fingerprints from {}", current.size + previous.size, stateFile);
+        } catch (NoSuchFileException e) {
+            // First start.
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable duplicate detector state {}", stateFile, e);
+        }
+    }
+}
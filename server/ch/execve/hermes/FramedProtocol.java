@@ -0,0 +1,127 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The framed variant of the client protocol, for clients that send many messages over one
+ * connection.
+ *
+ * <p>The client opens the connection with {@link #MAGIC}. An email never starts with a NUL byte, so
+ * the server can tell this apart from the legacy protocol, where the connection carries a single
+ * message terminated by EOF. After the magic, each request is a frame:
+ *
+ * <pre>
+ *   u32 request id | u32 length | length bytes of message
+ * </pre>
+ *
+ * <p>Integers are big-endian. Each response is a frame with the id of the request it answers and the
+ * UTF-8 destination folder as its payload. As in the legacy protocol, the folder is prefixed with
+ * {@link MaildirDelivery#DELIVERED_MARKER} (the byte 0x06) when the server has already delivered the
+ * message to it; without the marker the client delivers the message itself. Requests are processed
+ * concurrently, so responses may arrive in any order. The client ends the session by shutting down
+ * its side of the connection; the server answers all outstanding requests before closing.
+ */
+final class FramedProtocol {
+    static final byte[] MAGIC = {0, 'H', 'E', 'R', 'M', 'E', 'S', '1'};
+    static final int HEADER_SIZE = 8;
+    static final int MAX_FRAME_LENGTH = 256 << 20;
+
+    /** A request or response. The payload of a request that exceeded the size limit is null. */
+    record Frame(int id, byte[] payload) {
+        boolean oversized() {
+            return payload == null;
+        }
+    }
+
+    private FramedProtocol() {}
+
+    /** Whether {@code prefix} is the magic that starts a framed session. */
+    static boolean isMagic(ByteBuffer prefix) {
+        return prefix.remaining() == MAGIC.length
+            && Arrays.equals(MAGIC, 0, MAGIC.length, prefix.array(), prefix.position(), prefix.limit());
+    }
+
+    /**
+     * Reads the next frame. Returns null on EOF between frames; EOF in the middle of a frame is an
+     * error.
+     */
+    static Frame readFrame(ReadableByteChannel channel) throws IOException {
+        return readFrame(channel, 0);
+    }
+
+    /**
+     * Like {@link #readFrame(ReadableByteChannel)}, but skips the payload of frames longer than
+     * {@code maxLength} bytes (0 means no limit other than {@link #MAX_FRAME_LENGTH}) and returns
+     * them without one.
+     */
+    static Frame readFrame(ReadableByteChannel channel, long maxLength) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (!readFully(channel, header, true)) {
+            return null;
+        }
+        header.flip();
+        int id = header.getInt();
+        int length = header.getInt();
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + Integer.toUnsignedString(length) + " for request " + id);
+        }
+        if (maxLength > 0 && length > maxLength) {
+            ByteBuffer scratch = ByteBuffer.allocate(Math.min(length, 64 << 10));
+            for (int left = length; left > 0; left -= scratch.capacity()) {
+                readFully(channel, scratch.clear().limit(Math.min(left, scratch.capacity())), false);
+            }
+            return new Frame(id, null);
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(channel, payload, false);
+        return new Frame(id, payload.array());
+    }
+
+    static void writeFrame(WritableByteChannel channel, int id, String payload) throws IOException {
+        writeFrame(channel, id, payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void writeFrame(WritableByteChannel channel, int id, byte[] payload) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        frame.putInt(id).putInt(payload.length).put(payload).flip();
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    /**
+     * Fills {@code buffer}. Returns false if the channel was at EOF before anything was read and
+     * {@code eofAllowed} is set.
+     */
+    private static boolean readFully(ReadableByteChannel channel, ByteBuffer buffer, boolean eofAllowed) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (eofAllowed && buffer.position() == 0) {
+                    return false;
+                }
+                throw new EOFException("Connection closed in the middle of a frame");
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,117 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads the header block of an email off a channel and stops at the first empty line, leaving the
+ * body unread. Used when no classifier needs the body, so that large messages are never buffered.
+ */
+final class HeaderBlockReader {
+    private final ByteBuffer buffer;
+    private final long maxSize;
+    private final ByteArrayOutputStream headers = new ByteArrayOutputStream();
+    // True at the start of the message and right after a line feed.
+    private boolean lineStart = true;
+    private boolean endOfStream = false;
+    private boolean oversized = false;
+    private long discarded = 0;
+
+    /** {@code maxSize} bounds the header block that is buffered; 0 means no limit. */
+    HeaderBlockReader(int bufferSize, long maxSize) {
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Reads until the empty line that terminates the headers, or until the end of the stream. Returns
+     * the header bytes including the terminating empty line. Stops early if the header block grows
+     * beyond the maximum size, see {@link #oversized}.
+     */
+    byte[] readHeaders(ReadableByteChannel channel) throws IOException {
+        while (channel.read(buffer) > 0) {
+            buffer.flip();
+            int start = buffer.position();
+            int end = findEndOfHeaders(buffer);
+            headers.write(buffer.array(), start, (end < 0 ? buffer.limit() : end) - start);
+            if (maxSize > 0 && headers.size() > maxSize) {
+                // E.g. a message without an empty line; the rest is left for drain().
+                oversized = true;
+                buffer.clear();
+                return headers.toByteArray();
+            }
+            if (end >= 0) {
+                // Whatever followed the empty line in this read is already part of the body.
+                discarded = buffer.limit() - end;
+                buffer.clear();
+                return headers.toByteArray();
+            }
+            buffer.clear();
+        }
+        endOfStream = true;
+        return headers.toByteArray();
+    }
+
+    /** Whether readHeaders() gave up because the header block is larger than the maximum size. */
+    boolean oversized() {
+        return oversized;
+    }
+
+    /**
+     * Returns the length of the header block at the start of {@code message}, including the empty
+     * line that terminates it. The whole message is the header block if there is no empty line.
+     */
+    static int headerLength(ByteBuffer message) {
+        int end = new HeaderBlockReader(0, 0).findEndOfHeaders(message);
+        return end < 0 ? message.remaining() : end - message.position();
+    }
+
+    /** Returns the index just past the header terminator in {@code data}, or -1 if it is not there. */
+    private int findEndOfHeaders(ByteBuffer data) {
+        for (int i = data.position(); i < data.limit(); i++) {
+            byte b = data.get(i);
+            if (b == '\n') {
+                if (lineStart) {
+                    return i + 1;
+                }
+                lineStart = true;
+            } else if (b != '\r') {
+                lineStart = false;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads and discards the rest of the stream, so the client can finish sending. Returns the
+     * number of body bytes that were thrown away.
+     */
+    long drain(ReadableByteChannel channel) throws IOException {
+        if (endOfStream) {
+            return discarded;
+        }
+        int read;
+        while ((read = channel.read(buffer)) > 0) {
+            discarded += read;
+            buffer.clear();
+        }
+        endOfStream = true;
+        return discarded;
+    }
+}
@@ -0,0 +1,111 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A long-lived connection to the server that speaks the {@link FramedProtocol}. Any number of
+ * threads may submit messages at once; each gets a future that completes with the server's
+ * response when it answers: the destination folder, prefixed with
+ * {@link MaildirDelivery#DELIVERED_MARKER} if the server has already delivered the message there.
+ */
+public final class HermesClient implements AutoCloseable {
+    private final SocketChannel channel;
+    private final Map<Integer, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final Thread reader;
+
+    private HermesClient(SocketChannel channel) {
+        this.channel = channel;
+        this.reader = Thread.ofPlatform().daemon().name("hermes-client-reader").start(this::readResponses);
+    }
+
+    public static HermesClient connect(Path socketPath) throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+            ByteBuffer magic = ByteBuffer.wrap(FramedProtocol.MAGIC);
+            while (magic.hasRemaining()) {
+                channel.write(magic);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new HermesClient(channel);
+    }
+
+    /** Sends {@code message} for classification. */
+    public CompletableFuture<String> classify(byte[] message) throws IOException {
+        int id = nextId.getAndIncrement();
+        var response = new CompletableFuture<String>();
+        pending.put(id, response);
+        try {
+            synchronized (channel) {
+                FramedProtocol.writeFrame(channel, id, message);
+            }
+        } catch (IOException e) {
+            pending.remove(id);
+            throw e;
+        }
+        return response;
+    }
+
+    private void readResponses() {
+        try {
+            FramedProtocol.Frame frame;
+            while ((frame = FramedProtocol.readFrame(channel)) != null) {
+                CompletableFuture<String> response = pending.remove(frame.id());
+                if (response != null) {
+                    response.complete(new String(frame.payload(), StandardCharsets.UTF_8));
+                }
+            }
+            failPending(new IOException("Server closed the connection"));
+        } catch (IOException e) {
+            failPending(e);
+        }
+    }
+
+    private void failPending(IOException e) {
+        pending.values().forEach(response -> response.completeExceptionally(e));
+        pending.clear();
+    }
+
+    /** Waits for all outstanding responses, then closes the connection. */
+    @Override
+    public void close() throws IOException {
+        try {
+            synchronized (channel) {
+                channel.shutdownOutput();
+            }
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import ch.execve.hermes.classifier.ParsedMessage;
+import com.beust.jcommander.Parameter;
+import com.google.common.base.Throwables;
+import com.google.inject.Guice;
+import com.google.inject.ProvisionException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks a configuration against example messages in process: loads classifiers.json once and
+ * classifies every example concurrently through the {@link Dispatcher}.
+ *
+ * <p>Examples are given as directories laid out as {@code <classifier>/positive/...} and {@code
+ * <classifier>/negative/...}, or as cases files with one "path classifier positive|negative" line
+ * per message. A positive example must be dispatched to its classifier, a negative one to anything
+ * else. Exits with 1 if any example fails and with 2 if the configuration cannot be loaded or an
+ * example names a classifier it doesn't have.
+ */
+public class HermesExamples {
+    private static final Logger logger = LoggerFactory.getLogger(HermesExamples.class);
+
+    static class ExamplesArgs {
+        @Parameter(names = "--examples", description = "Directory with a positive and a negative directory per classifier")
+        private List<String> directories = new ArrayList<>();
+
+        @Parameter(names = "--cases", description = "File with one \"path classifier positive|negative\" line per example")
+        private List<String> casesFiles = new ArrayList<>();
+
+        @Parameter(names = "--threads", description = "Number of worker threads")
+        private int threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    private record Example(Path file, String classifier, boolean positive) {
+        String kind() {
+            return positive ? "positive" : "negative";
+        }
+    }
+
+    /** Why an example failed, or empty if it passed. */
+    private record Outcome(Example example, Optional<String> failure) {}
+
+    private final Dispatcher dispatcher;
+    private final Session session = Session.getInstance(new Properties());
+
+    private HermesExamples(Dispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        var examplesArgs = new ExamplesArgs();
+        CommandLineArgs flags = CommandLineArgs.getFlags(args, examplesArgs);
+        // Results go to stdout, so keep the console log out of their way.
+        HermesServer.configureLogging(flags.getLogFile(), "System.err");
+
+        List<Example> examples = new ArrayList<>();
+        for (String directory : examplesArgs.directories) {
+            examples.addAll(listExamples(Path.of(directory)));
+        }
+        for (String casesFile : examplesArgs.casesFiles) {
+            examples.addAll(readCases(Path.of(casesFile)));
+        }
+
+        Dispatcher dispatcher;
+        try {
+            dispatcher = Guice.createInjector(new HermesModule(flags)).getInstance(Dispatcher.class);
+        } catch (ProvisionException e) {
+            // Typically a misspelled implementation class or a broken rule file.
+            System.err.println("Invalid configuration in " + flags.getConfigDir() + ": " + describe(e));
+            System.exit(2);
+            return;
+        }
+        Set<String> configured = dispatcher.classifiers().stream().map(LoadedClassifier::name).collect(Collectors.toSet());
+        Set<String> unknown = examples.stream()
+            .map(Example::classifier)
+            .filter(name -> !configured.contains(name))
+            .collect(Collectors.toCollection(TreeSet::new));
+        if (!unknown.isEmpty()) {
+            System.err.println("Examples for classifiers that are not configured: " + String.join(", ", unknown));
+            System.exit(2);
+        }
+        if (examples.isEmpty()) {
+            System.err.println("No examples found");
+            System.exit(2);
+        }
+
+        int failed = new HermesExamples(dispatcher).run(examples, examplesArgs.threads, System.out);
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /** Classifies all examples and prints the failures and a summary. Returns the number of failures. */
+    private int run(List<Example> examples, int threads, PrintStream out) throws InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Outcome>> outcomes = new ArrayList<>(examples.size());
+            for (Example example : examples) {
+                outcomes.add(workers.submit(() -> check(example)));
+            }
+
+            // Per classifier: passed and total, positive examples first.
+            Map<String, int[]> counts = new TreeMap<>();
+            int failed = 0;
+            for (Future<Outcome> future : outcomes) {
+                Outcome outcome;
+                try {
+                    outcome = future.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Example check failed unexpectedly", e.getCause());
+                }
+                Example example = outcome.example();
+                int[] count = counts.computeIfAbsent(example.classifier(), k -> new int[4]);
+                int offset = example.positive() ? 0 : 2;
+                count[offset + 1]++;
+                if (outcome.failure().isEmpty()) {
+                    count[offset]++;
+                } else {
+                    failed++;
+                    out.println("FAIL " + example.classifier() + " " + example.kind() + " " + example.file() + ": "
+                        + outcome.failure().get());
+                }
+            }
+
+            out.println("Classifier\tPositive\tNegative");
+            counts.forEach((name, count) ->
+                out.println(name + "\t" + count[0] + "/" + count[1] + "\t" + count[2] + "/" + count[3]));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            out.printf("%d examples, %d failed, in %.2f s%n", examples.size(), failed, seconds);
+            out.flush();
+            return failed;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private Outcome check(Example example) {
+        String destination;
+        try {
+            byte[] data = Files.readAllBytes(example.file());
+            ByteBuffer parsed = ByteBuffer.wrap(data);
+            if (dispatcher.headersOnly()) {
+                parsed = parsed.slice(0, HeaderBlockReader.headerLength(parsed));
+            }
+            var message = ParsedMessage.of(new MimeMessage(session, new ByteBufferInputStream(parsed)));
+            destination = dispatcher.classify(message).map(LoadedClassifier::name).orElse(null);
+        } catch (IOException | MessagingException e) {
+            logger.error("Failed to read {}", example.file(), e);
+            return new Outcome(example, Optional.of("unreadable: " + e.getMessage()));
+        }
+        boolean matched = example.classifier().equals(destination);
+        if (matched == example.positive()) {
+            return new Outcome(example, Optional.empty());
+        }
+        return new Outcome(example, Optional.of(
+            destination == null ? "matched no classifier" : "matched by classifier '" + destination + "'"));
+    }
+
+    /** Lists the files under {@code <classifier>/positive} and {@code <classifier>/negative}. */
+    private static List<Example> listExamples(Path root) throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new IllegalArgumentException("Not a directory: " + root);
+        }
+        List<Example> examples = new ArrayList<>();
+        try (Stream<Path> classifiers = Files.list(root)) {
+            for (Path classifierDir : classifiers.filter(Files::isDirectory).sorted().toList()) {
+                for (String kind : List.of("positive", "negative")) {
+                    Path dir = classifierDir.resolve(kind);
+                    if (!Files.isDirectory(dir)) {
+                        continue;
+                    }
+                    try (Stream<Path> files = Files.walk(dir)) {
+                        for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+                            examples.add(new Example(file, classifierDir.getFileName().toString(), kind.equals("positive")));
+                        }
+                    }
+                }
+            }
+        }
+        return examples;
+    }
+
+    private static List<Example> readCases(Path casesFile) throws IOException {
+        List<Example> examples = new ArrayList<>();
+        for (String line : Files.readAllLines(casesFile)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] fields = line.strip().split("\\s+");
+            if (fields.length != 3 || !(fields[2].equals("positive") || fields[2].equals("negative"))) {
+                throw new IllegalArgumentException("Malformed line in " + casesFile + ": " + line);
+            }
+            examples.add(new Example(Path.of(fields[0]), fields[1], fields[2].equals("positive")));
+        }
+        return examples;
+    }
+
+    private static String describe(Throwable e) {
+        return Throwables.getCausalChain(e).stream()
+            .skip(1)
+            .map(cause -> cause.getClass().getSimpleName() + ": " + cause.getMessage())
+            .collect(Collectors.joining("; caused by "));
+    }
+}
@@ -33,5 +33,31 @@ public class HermesModule extends AbstractModule {
         bind(String.class).annotatedWith(Names.named("socketPath")).toInstance(args.getSocketPath());
         bind(String.class).annotatedWith(Names.named("configDir")).toInstance(args.getConfigDir());
         bind(String.class).annotatedWith(Names.named("databasePath")).toInstance(args.getDatabasePath());
+        bind(Integer.class).annotatedWith(Names.named("maxInFlight")).toInstance(args.getMaxInFlight());
+        bind(Boolean.class).annotatedWith(Names.named("databaseAsync")).toInstance(args.isDatabaseAsync());
+        bind(Integer.class).annotatedWith(Names.named("databaseBatchSize")).toInstance(args.getDatabaseBatchSize());
+        bind(Integer.class).annotatedWith(Names.named("databaseBatchLatencyMs")).toInstance(args.getDatabaseBatchLatencyMs());
+        bind(DatabaseLogger.Partitioning.class).annotatedWith(Names.named("databasePartitioning"))
+            .toInstance(args.getDatabasePartitioning());
+        bind(Integer.class).annotatedWith(Names.named("databaseRetention")).toInstance(args.getDatabaseRetention());
+        bind(Boolean.class).annotatedWith(Names.named("streamHeaders")).toInstance(args.isStreamHeaders());
+        bind(Boolean.class).annotatedWith(Names.named("parallelClassifiers")).toInstance(args.isParallelClassifiers());
+        bind(Integer.class).annotatedWith(Names.named("classifierDeadlineMs")).toInstance(args.getClassifierDeadlineMs());
+        bind(String.class).annotatedWith(Names.named("ruleSnapshot"))
+            .toInstance(args.getRuleSnapshot() == null ? "" : args.getRuleSnapshot());
+        bind(Long.class).annotatedWith(Names.named("maxMessageSize")).toInstance(args.getMaxMessageSize());
+        // An empty path disables server-side delivery.
+        bind(String.class).annotatedWith(Names.named("maildirPath"))
+            .toInstance(args.getMaildirPath() == null ? "" : args.getMaildirPath());
+        bind(MaildirDelivery.FsyncPolicy.class).annotatedWith(Names.named("fsyncPolicy")).toInstance(args.getFsyncPolicy());
+        bind(Long.class).annotatedWith(Names.named("classificationCacheSize")).toInstance(args.getClassificationCacheSize());
+        bind(Integer.class).annotatedWith(Names.named("metricsIntervalSeconds")).toInstance(args.getMetricsIntervalSeconds());
+        // Guice does not bind nulls; an empty path means "log instead".
+        bind(String.class).annotatedWith(Names.named("metricsFile"))
+            .toInstance(args.getMetricsFile() == null ? "" : args.getMetricsFile());
+        bind(Integer.class).annotatedWith(Names.named("dispatchLogSample")).toInstance(args.getDispatchLogSample());
+        bind(Integer.class).annotatedWith(Names.named("duplicateWindowSeconds")).toInstance(args.getDuplicateWindowSeconds());
+        bind(String.class).annotatedWith(Names.named("duplicateStateFile"))
+            .toInstance(args.getDuplicateStateFile() == null ? "" : args.getDuplicateStateFile());
     }
 }
\ No newline at end of file
@@ -0,0 +1,256 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import ch.execve.hermes.classifier.ParsedMessage;
+import com.beust.jcommander.Parameter;
+import com.google.inject.Guice;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Classifies the messages of an existing Maildir, directory of message files or mbox file.
+ *
+ * <p>Prints a From/Subject/Classification table. With {@code --apply}, messages are also moved
+ * (Maildir) or copied (mbox) into the destination folders under {@code --target}, using the same
+ * layout as the delivery client.
+ */
+public class HermesOffline {
+    private static final Logger logger = LoggerFactory.getLogger(HermesOffline.class);
+    private static final byte[] MBOX_SEPARATOR = "From ".getBytes();
+    private static final int SCAN_BUFFER_SIZE = 1 << 20;
+
+    static class OfflineArgs {
+        @Parameter(names = "--source", description = "Maildir folder, directory of message files or mbox file", required = true)
+        private String source;
+
+        @Parameter(names = "--apply", description = "Move messages to their destination folders instead of only printing them")
+        private boolean apply = false;
+
+        @Parameter(names = "--target", description = "Maildir root that destination folders are created in (required with --apply)")
+        private String target;
+
+        @Parameter(names = "--threads", description = "Number of worker threads")
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        @Parameter(names = "--rule-report", description = "Print the patterns that matched none of the messages to stderr")
+        private boolean ruleReport = false;
+    }
+
+    /** A message stored at {@code offset} in {@code file}; {@code folder} is new or cur for Maildir sources. */
+    private record Item(String label, Path file, long offset, long length, String folder) {}
+
+    private record Result(String from, String subject, String destination) {}
+
+    private final Dispatcher dispatcher;
+    private final Session session = Session.getInstance(new Properties());
+    private final Path target;
+    private final boolean mbox;
+
+    private HermesOffline(Dispatcher dispatcher, Path target, boolean mbox) {
+        this.dispatcher = dispatcher;
+        this.target = target;
+        this.mbox = mbox;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        var offlineArgs = new OfflineArgs();
+        CommandLineArgs flags = CommandLineArgs.getFlags(args, offlineArgs);
+        // The table goes to stdout, so keep the console log out of its way.
+        HermesServer.configureLogging(flags.getLogFile(), "System.err");
+        if (offlineArgs.apply && offlineArgs.target == null) {
+            throw new IllegalArgumentException("--apply requires --target");
+        }
+
+        Path source = Path.of(offlineArgs.source);
+        boolean mbox = Files.isRegularFile(source);
+        List<Item> items = mbox ? scanMbox(source) : listMessages(source);
+        logger.info("Found {} messages in {}", items.size(), source);
+
+        var dispatcher = Guice.createInjector(new HermesModule(flags)).getInstance(Dispatcher.class);
+        var offline = new HermesOffline(
+            dispatcher, offlineArgs.apply ? Path.of(offlineArgs.target) : null, mbox);
+        offline.run(items, offlineArgs.threads, System.out);
+        if (offlineArgs.ruleReport) {
+            System.err.print(RuleReport.format(dispatcher.classifiers()));
+        }
+    }
+
+    private void run(List<Item> items, int threads, PrintStream out) throws InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> results = new ArrayList<>(items.size());
+            for (Item item : items) {
+                results.add(workers.submit(() -> process(item)));
+            }
+
+            out.println("From\tSubject\tClassification");
+            int failed = 0;
+            for (Future<Result> future : results) {
+                try {
+                    Result result = future.get();
+                    out.println(result.from() + "\t" + result.subject() + "\t" + result.destination());
+                } catch (ExecutionException e) {
+                    failed++;
+                    logger.error("Failed to process message", e.getCause());
+                }
+            }
+            out.flush();
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            logger.info(
+                "Classified {} messages ({} failed) in {} s: {} messages/sec",
+                items.size() - failed,
+                failed,
+                String.format("%.2f", seconds),
+                String.format("%.0f", items.size() / Math.max(seconds, 1e-9)));
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private Result process(Item item) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(item.file(), StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, item.offset(), item.length());
+        }
+
+        String from = "<null>";
+        String subject = "<null>";
+        String destination;
+        try {
+            // Don't let the parser copy bodies nobody is going to look at.
+            ByteBuffer parsed = dispatcher.headersOnly()
+                ? data.slice(0, HeaderBlockReader.headerLength(data))
+                : data;
+            var message = ParsedMessage.of(new MimeMessage(session, new ByteBufferInputStream(parsed)));
+            from = message.header("From").orElse(from);
+            subject = message.header("Subject").orElse(subject);
+            destination = dispatcher.classify(message).map(LoadedClassifier::destination).orElse("INBOX");
+        } catch (MessagingException e) {
+            logger.error("Failed to parse {}", item.label(), e);
+            destination = "INBOX.hermes-error";
+        }
+
+        if (target != null) {
+            apply(item, data, target.resolve(destination));
+        }
+        return new Result(from, subject, destination);
+    }
+
+    private void apply(Item item, ByteBuffer data, Path folder) throws IOException {
+        if (mbox) {
+            Maildir.deliver(folder, data);
+            return;
+        }
+        Path destination = folder.resolve(item.folder()).resolve(item.file().getFileName());
+        if (destination.toAbsolutePath().equals(item.file().toAbsolutePath())) {
+            return;
+        }
+        Maildir.ensureFolder(folder);
+        Files.move(item.file(), destination);
+    }
+
+    /** Lists new and cur of a Maildir folder, or all files of a plain directory. */
+    private static List<Item> listMessages(Path source) throws IOException {
+        boolean maildir = Files.isDirectory(source.resolve("new")) || Files.isDirectory(source.resolve("cur"));
+        List<Item> items = new ArrayList<>();
+        for (String folder : maildir ? List.of("new", "cur") : List.of("")) {
+            Path dir = source.resolve(folder);
+            if (!Files.isDirectory(dir)) {
+                continue;
+            }
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+                    items.add(new Item(file.toString(), file, 0, Files.size(file), maildir ? folder : "new"));
+                }
+            }
+        }
+        return items;
+    }
+
+    /** Finds the messages in an mbox file, i.e. the spans between lines starting with "From ". */
+    private static List<Item> scanMbox(Path mbox) throws IOException {
+        List<Item> items = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(mbox, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long messageStart = 0;
+            long position = 0;
+            boolean lineStart = true;
+            boolean inSeparator = false;
+            int matched = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                byte[] bytes = buffer.array();
+                for (int i = 0; i < buffer.limit(); i++, position++) {
+                    byte b = bytes[i];
+                    if (inSeparator) {
+                        if (b == '\n') {
+                            inSeparator = false;
+                            lineStart = true;
+                            messageStart = position + 1;
+                        }
+                        continue;
+                    }
+                    if (lineStart || matched > 0) {
+                        if (b == MBOX_SEPARATOR[matched]) {
+                            lineStart = false;
+                            if (++matched == MBOX_SEPARATOR.length) {
+                                long separatorStart = position - MBOX_SEPARATOR.length + 1;
+                                addMboxItem(items, mbox, messageStart, separatorStart);
+                                matched = 0;
+                                inSeparator = true;
+                            }
+                            continue;
+                        }
+                        matched = 0;
+                    }
+                    lineStart = b == '\n';
+                }
+                buffer.clear();
+            }
+            if (!inSeparator) {
+                addMboxItem(items, mbox, messageStart, size);
+            }
+        }
+        return items;
+    }
+
+    private static void addMboxItem(List<Item> items, Path mbox, long start, long end) {
+        if (end > start) {
+            items.add(new Item(mbox + "#" + (items.size() + 1), mbox, start, end - start, "new"));
+        }
+    }
+}
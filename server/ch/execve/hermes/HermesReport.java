@@ -0,0 +1,86 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import com.beust.jcommander.Parameter;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Summarizes the dispatch log: messages per classifier and the top senders of each classifier
+ * over the last {@code --days} days. Safe to run against the database of a running server.
+ */
+public class HermesReport {
+    static class ReportArgs {
+        @Parameter(names = "--days", description = "Number of days to report on")
+        private int days = 7;
+
+        @Parameter(names = "--top", description = "Number of senders to list per classifier")
+        private int top = 10;
+
+        @Parameter(names = "--connections", description = "Number of read-only database connections")
+        private int connections = 4;
+    }
+
+    public static void main(String[] args) throws SQLException {
+        var reportArgs = new ReportArgs();
+        CommandLineArgs flags = CommandLineArgs.getFlags(args, reportArgs);
+        HermesServer.configureLogging(flags.getLogFile(), "System.err");
+
+        Instant since = Instant.now().minus(Duration.ofDays(reportArgs.days));
+        try (var reader = new DispatchLogReader(flags.getDatabasePath(), reportArgs.connections);
+            ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Map<String, Long> counts = reader.countByClassifier(since);
+            // One query per classifier, spread over the connection pool.
+            Map<String, CompletableFuture<String>> sections = new LinkedHashMap<>();
+            for (String classifier : counts.keySet()) {
+                if (classifier.isEmpty()) {
+                    continue;
+                }
+                sections.put(classifier, CompletableFuture.supplyAsync(() -> {
+                    try {
+                        var text = new StringBuilder();
+                        for (var sender : reader.topSenders(classifier, since, reportArgs.top)) {
+                            text.append("  ").append(sender.count()).append('\t').append(sender.from()).append('\n');
+                        }
+                        return text.toString();
+                    } catch (SQLException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor));
+            }
+            print(System.out, reportArgs.days, counts, sections);
+        }
+    }
+
+    private static void print(
+        PrintStream out, int days, Map<String, Long> counts, Map<String, CompletableFuture<String>> sections) {
+        out.printf("Messages in the last %d days by classifier:%n", days);
+        counts.forEach((classifier, count) ->
+            out.printf("%8d\t%s%n", count, classifier.isEmpty() ? "(no match)" : classifier));
+        sections.forEach((classifier, senders) -> {
+            out.printf("%nTop senders for %s:%n", classifier);
+            out.print(senders.join());
+        });
+    }
+}
@@ -14,12 +14,14 @@
 
 package ch.execve.hermes;
 
+import ch.qos.logback.classic.AsyncAppender;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.ConsoleAppender;
 import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.OutputStreamAppender;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import java.io.IOException;
@@ -28,7 +30,31 @@ import org.slf4j.LoggerFactory;
 
 public class HermesServer {
 
-    private static void configureLogging(String logFile) {
+    /** What the asynchronous appender does when its queue is full. */
+    enum LogOverflow {
+        /** Callers wait for room, so nothing is lost but a slow disk delays deliveries. */
+        BLOCK,
+        /**
+         * Callers never wait. Once the queue is 80% full, INFO and lower are dropped to keep room for
+         * warnings and errors; a full queue drops everything.
+         */
+        DROP,
+    }
+
+    private static void configureLogging(CommandLineArgs flags) {
+        configureLogging(flags.getLogFile(), "System.out", flags.getLogQueueSize(), flags.getLogOverflow());
+    }
+
+    /** Sends logs to {@code logFile}, or to the console stream {@code consoleTarget} if it is null. */
+    static void configureLogging(String logFile, String consoleTarget) {
+        configureLogging(logFile, consoleTarget, 0, LogOverflow.BLOCK);
+    }
+
+    /**
+     * Like {@link #configureLogging(String, String)}, but if {@code queueSize} is positive, events are
+     * queued and written by a background thread, so that log I/O stays off the delivery path.
+     */
+    static void configureLogging(String logFile, String consoleTarget, int queueSize, LogOverflow overflow) {
         LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
         loggerContext.reset();
 
@@ -40,26 +66,46 @@ public class HermesServer {
         ch.qos.logback.classic.Logger rootLogger = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
         rootLogger.setLevel(Level.INFO);
 
+        OutputStreamAppender<ILoggingEvent> output;
         if (logFile == null) {
             ConsoleAppender<ILoggingEvent> appender = new ConsoleAppender<>();
-            appender.setContext(loggerContext);
-            appender.setEncoder(encoder);
-            appender.start();
-            rootLogger.addAppender(appender);
+            appender.setTarget(consoleTarget);
+            output = appender;
         } else {
             FileAppender<ILoggingEvent> appender = new FileAppender<>();
-            appender.setContext(loggerContext);
             appender.setFile(logFile);
-            appender.setEncoder(encoder);
-            appender.start();
-            rootLogger.addAppender(appender);
+            output = appender;
         }
+        output.setContext(loggerContext);
+        output.setEncoder(encoder);
+        output.start();
+        if (queueSize <= 0) {
+            rootLogger.addAppender(output);
+            return;
+        }
+
+        AsyncAppender async = new AsyncAppender();
+        async.setContext(loggerContext);
+        async.setName("async");
+        async.setQueueSize(queueSize);
+        // Caller data (file and line) is not in the pattern and would cost a stack walk per event.
+        async.setIncludeCallerData(false);
+        if (overflow == LogOverflow.BLOCK) {
+            async.setDiscardingThreshold(0);
+            async.setNeverBlock(false);
+        } else {
+            async.setDiscardingThreshold(queueSize / 5);
+            async.setNeverBlock(true);
+        }
+        async.addAppender(output);
+        async.start();
+        rootLogger.addAppender(async);
     }
 
     public static void main(String[] args) throws IOException {
         System.out.println("boop"); // A polite way to greet the user.
         CommandLineArgs flags = CommandLineArgs.getFlags(args);
-        configureLogging(flags.getLogFile());
+        configureLogging(flags);
         final Logger logger = LoggerFactory.getLogger(HermesServer.class);
 
         logger.info("Using config directory: {}", flags.getConfigDir());
@@ -67,6 +113,29 @@ public class HermesServer {
 
         Injector injector = Guice.createInjector(new HermesModule(flags));
         SocketListener socketListener = injector.getInstance(SocketListener.class);
-        socketListener.start();
+        // Take connections into the backlog while the classifiers and the database are set up.
+        socketListener.bind();
+        DatabaseLogger dbLogger = injector.getInstance(DatabaseLogger.class);
+        MetricsReporter metricsReporter = injector.getInstance(MetricsReporter.class);
+        DuplicateDetector duplicates = injector.getInstance(DuplicateDetector.class);
+        // Flush any queued dispatch log records when the server is stopped.
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            dbLogger.close();
+            duplicates.close();
+            metricsReporter.report();
+            // Writes out whatever is still queued in the asynchronous appender.
+            ((LoggerContext) LoggerFactory.getILoggerFactory()).stop();
+        }, "hermes-shutdown"));
+        metricsReporter.start();
+        if (flags.isWatchConfig()) {
+            injector.getInstance(ConfigWatcher.class).start();
+        }
+        try {
+            socketListener.start();
+        } catch (RuntimeException e) {
+            logger.error("Failed to start server", e);
+            // Runs the shutdown hook, and tells the service manager that the server did not stop cleanly.
+            System.exit(1);
+        }
     }
 }
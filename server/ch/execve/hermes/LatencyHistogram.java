@@ -0,0 +1,116 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with log-linear buckets, in the spirit of HdrHistogram: every
+ * power of two is split into 8 buckets, so percentiles are accurate to within 12.5% over the whole
+ * range of long values, with a fixed 4 KB footprint.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /** Point-in-time summary, in the unit values were recorded in. */
+    record Snapshot(long count, double mean, long p50, long p90, long p99, long p999, long max) {}
+
+    void record(long value) {
+        long v = Math.max(0, value);
+        buckets.incrementAndGet(index(v));
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    /** Records the time elapsed since {@code startNanos}, a value of System.nanoTime(). */
+    void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        long maximum = max.get();
+        return new Snapshot(
+            total,
+            total == 0 ? 0 : (double) sum.sum() / count.sum(),
+            percentile(counts, total, 0.5, maximum),
+            percentile(counts, total, 0.9, maximum),
+            percentile(counts, total, 0.99, maximum),
+            percentile(counts, total, 0.999, maximum),
+            maximum);
+    }
+
+    private static long percentile(long[] counts, long total, double quantile, long maximum) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // Report the top of the bucket, but never more than the largest recorded value.
+                return Math.min(i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE, maximum);
+            }
+        }
+        return maximum;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        return (1L << exponent) | (sub << (exponent - SUB_BUCKET_BITS));
+    }
+
+    /** Formats a nanosecond value for humans. */
+    static String formatNanos(double nanos) {
+        if (nanos < TimeUnit.MICROSECONDS.toNanos(1)) {
+            return String.format("%.0fns", nanos);
+        } else if (nanos < TimeUnit.MILLISECONDS.toNanos(1)) {
+            return String.format("%.1fus", nanos / 1e3);
+        } else if (nanos < TimeUnit.SECONDS.toNanos(1)) {
+            return String.format("%.2fms", nanos / 1e6);
+        }
+        return String.format("%.3fs", nanos / 1e9);
+    }
+}
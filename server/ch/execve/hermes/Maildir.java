@@ -0,0 +1,100 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Helpers for writing to Maildir folders, following the same layout as client/libmaildir.c. */
+final class Maildir {
+    private static final AtomicLong deliveries = new AtomicLong();
+    private static final String HOSTNAME = hostname();
+
+    private Maildir() {}
+
+    /** Creates {@code folder} and its tmp, new and cur subdirectories if needed. */
+    static void ensureFolder(Path folder) throws IOException {
+        Files.createDirectories(folder.resolve("tmp"));
+        Files.createDirectories(folder.resolve("new"));
+        Files.createDirectories(folder.resolve("cur"));
+    }
+
+    /** Returns a file name that is unique across processes and deliveries on this host. */
+    static String uniqueName() {
+        long now = System.currentTimeMillis();
+        return String.format(
+            "%d.M%dP%dQ%d.%s",
+            now / 1000,
+            (now % 1000) * 1000,
+            ProcessHandle.current().pid(),
+            deliveries.incrementAndGet(),
+            HOSTNAME);
+    }
+
+    /** Writes {@code message} to tmp and renames it into new. Returns the delivered file. */
+    static Path deliver(Path folder, ByteBuffer... message) throws IOException {
+        return deliver(folder, false, message);
+    }
+
+    /**
+     * Like {@link #deliver(Path, ByteBuffer...)}. With {@code force}, the file's contents are
+     * flushed to disk before it is renamed into new, so a crash never leaves an empty message
+     * there. Making the rename itself durable is up to the caller; see {@link #syncDirectory}.
+     */
+    static Path deliver(Path folder, boolean force, ByteBuffer... message) throws IOException {
+        ensureFolder(folder);
+        String name = uniqueName();
+        Path tmp = folder.resolve("tmp").resolve(name);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer[] data = new ByteBuffer[message.length];
+            long remaining = 0;
+            for (int i = 0; i < message.length; i++) {
+                data[i] = message[i].duplicate();
+                remaining += data[i].remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(data);
+            }
+            if (force) {
+                channel.force(false);
+            }
+        }
+        return Files.move(tmp, folder.resolve("new").resolve(name), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Flushes the entries of {@code directory} (e.g. renames into it) to disk. */
+    static void syncDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private static String hostname() {
+        try {
+            // Maildir reserves '/' and ':' in file names.
+            return InetAddress.getLocalHost().getHostName().replace("/", "\\057").replace(":", "\\072");
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+}
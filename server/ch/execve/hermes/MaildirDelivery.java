@@ -0,0 +1,148 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers classified messages into the Maildir on the server side, so the client doesn't have to
+ * write the bytes it has already sent. Disabled unless a Maildir root is configured.
+ */
+@Singleton
+class MaildirDelivery {
+    /**
+     * Prefixed to the folder name in the response when the server has delivered the message. A
+     * response without it asks the client to deliver the message itself.
+     */
+    static final String DELIVERED_MARKER = "\u0006";
+
+    /** When to flush delivered messages to disk. */
+    enum FsyncPolicy {
+        /** Never; the messages reach the disk whenever the kernel writes them back. */
+        NONE,
+        /** Flush every message and its directory entry before acknowledging it. */
+        EACH,
+        /**
+         * Flush every message before renaming it into new, and share the flush of new between the
+         * deliveries to the same folder that are waiting for it at the same time.
+         */
+        BATCH,
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(MaildirDelivery.class);
+
+    private final Path root;
+    private final FsyncPolicy fsyncPolicy;
+    private final Map<Path, DirectorySync> directorySyncs = new ConcurrentHashMap<>();
+    private final LatencyHistogram deliveryLatency;
+    private final LatencyHistogram syncLatency;
+
+    @Inject
+    MaildirDelivery(
+        @Named("maildirPath") String maildirPath,
+        @Named("fsyncPolicy") FsyncPolicy fsyncPolicy,
+        Metrics metrics) {
+        this.root = maildirPath.isEmpty() ? null : Path.of(maildirPath).toAbsolutePath().normalize();
+        this.fsyncPolicy = fsyncPolicy;
+        this.deliveryLatency = metrics.histogram("maildir.deliver");
+        this.syncLatency = metrics.histogram("maildir.sync_directory");
+        if (root != null) {
+            logger.info("Delivering messages to {} (fsync policy {})", root, fsyncPolicy);
+        }
+    }
+
+    boolean enabled() {
+        return root != null;
+    }
+
+    /** Delivers {@code message} to {@code folder} under the Maildir root. */
+    Path deliver(String folder, ByteBuffer... message) throws IOException {
+        long start = System.nanoTime();
+        Path destination = root.resolve(folder).normalize();
+        if (!destination.startsWith(root) || destination.equals(root)) {
+            throw new IOException("Destination folder '" + folder + "' is outside of " + root);
+        }
+        Path delivered = Maildir.deliver(destination, fsyncPolicy != FsyncPolicy.NONE, message);
+        switch (fsyncPolicy) {
+            case NONE -> {}
+            case EACH -> syncDirectory(delivered.getParent());
+            case BATCH -> directorySyncs.computeIfAbsent(delivered.getParent(), DirectorySync::new).await();
+        }
+        deliveryLatency.recordSince(start);
+        return delivered;
+    }
+
+    private void syncDirectory(Path directory) throws IOException {
+        long start = System.nanoTime();
+        Maildir.syncDirectory(directory);
+        syncLatency.recordSince(start);
+    }
+
+    /**
+     * Group commit for the entries of one directory. A caller that finds no sync in progress
+     * becomes the leader and syncs on behalf of everyone who arrived before it started; callers
+     * that arrive during a sync wait for the next one.
+     */
+    private final class DirectorySync {
+        private final Path directory;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition done = lock.newCondition();
+        private long requested = 0;
+        private long synced = 0;
+        private boolean syncing = false;
+
+        DirectorySync(Path directory) {
+            this.directory = directory;
+        }
+
+        void await() throws IOException {
+            lock.lock();
+            try {
+                long ticket = ++requested;
+                while (synced < ticket) {
+                    if (syncing) {
+                        done.awaitUninterruptibly();
+                        continue;
+                    }
+                    syncing = true;
+                    long covered = requested;
+                    lock.unlock();
+                    try {
+                        syncDirectory(directory);
+                    } finally {
+                        lock.lock();
+                        syncing = false;
+                        done.signalAll();
+                    }
+                    // Only reached if the sync succeeded; otherwise the next waiter retries.
+                    synced = Math.max(synced, covered);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide registry of counters, gauges and latency histograms.
+ *
+ * <p>Metrics are created on first use and live for the lifetime of the process; all values are
+ * cumulative since startup. Latencies are recorded in nanoseconds.
+ */
+@Singleton
+class Metrics {
+    private final Instant started = Instant.now();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<String>> sections = new ConcurrentHashMap<>();
+
+    @Inject
+    Metrics() {}
+
+    LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /** Registers a value that is sampled whenever the metrics are reported. */
+    void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    /** Registers free-form text that is appended, under a heading, whenever the metrics are reported. */
+    void section(String name, Supplier<String> text) {
+        sections.put(name, text);
+    }
+
+    /** Renders all metrics as text, one per line, sorted by name. */
+    String format() {
+        var out = new StringBuilder();
+        Instant now = Instant.now();
+        out.append("# hermes metrics at ").append(now)
+            .append(", uptime ").append(Duration.between(started, now).toSeconds()).append("s\n");
+        new TreeMap<>(counters).forEach((name, value) ->
+            out.append("counter ").append(name).append(' ').append(value.sum()).append('\n'));
+        new TreeMap<>(gauges).forEach((name, value) ->
+            out.append("gauge ").append(name).append(' ').append(value.getAsLong()).append('\n'));
+        new TreeMap<>(histograms).forEach((name, histogram) -> {
+            var s = histogram.snapshot();
+            out.append("latency ").append(name)
+                .append(" count=").append(s.count())
+                .append(" mean=").append(LatencyHistogram.formatNanos(s.mean()))
+                .append(" p50=").append(LatencyHistogram.formatNanos(s.p50()))
+                .append(" p90=").append(LatencyHistogram.formatNanos(s.p90()))
+                .append(" p99=").append(LatencyHistogram.formatNanos(s.p99()))
+                .append(" p999=").append(LatencyHistogram.formatNanos(s.p999()))
+                .append(" max=").append(LatencyHistogram.formatNanos(s.max()))
+                .append('\n');
+        });
+        new TreeMap<>(sections).forEach((name, text) ->
+            out.append("# ").append(name).append('\n').append(text.get()));
+        return out.toString();
+    }
+}
@@ -0,0 +1,77 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically dumps {@link Metrics} as text, either to a file that is atomically replaced on every
+ * dump (so it can be read at any time) or to the log.
+ */
+@Singleton
+class MetricsReporter {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsReporter.class);
+
+    private final Metrics metrics;
+    private final int intervalSeconds;
+    private final Path metricsFile;
+
+    @Inject
+    MetricsReporter(
+        Metrics metrics,
+        @Named("metricsIntervalSeconds") int intervalSeconds,
+        @Named("metricsFile") String metricsFile) {
+        this.metrics = metrics;
+        this.intervalSeconds = intervalSeconds;
+        this.metricsFile = metricsFile.isEmpty() ? null : Path.of(metricsFile);
+    }
+
+    /** Starts the periodic dump, unless the interval is zero. */
+    void start() {
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("hermes-metrics").daemon().factory());
+        scheduler.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        logger.info("Reporting metrics every {} s to {}", intervalSeconds, metricsFile == null ? "the log" : metricsFile);
+    }
+
+    void report() {
+        String text = metrics.format();
+        if (metricsFile == null) {
+            logger.info("Metrics:\n{}", text);
+            return;
+        }
+        try {
+            Path tmp = metricsFile.resolveSibling(metricsFile.getFileName() + ".tmp");
+            Files.writeString(tmp, text);
+            Files.move(tmp, metricsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("Failed to write metrics to {}", metricsFile, e);
+        }
+    }
+}
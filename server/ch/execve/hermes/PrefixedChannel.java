@@ -0,0 +1,52 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/** Returns bytes that were already read from a channel before continuing with the channel itself. */
+final class PrefixedChannel implements ReadableByteChannel {
+    private final ByteBuffer prefix;
+    private final ReadableByteChannel channel;
+
+    PrefixedChannel(ByteBuffer prefix, ReadableByteChannel channel) {
+        this.prefix = prefix;
+        this.channel = channel;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!prefix.hasRemaining()) {
+            return channel.read(dst);
+        }
+        int n = Math.min(prefix.remaining(), dst.remaining());
+        dst.put(dst.position(), prefix, prefix.position(), n);
+        dst.position(dst.position() + n);
+        prefix.position(prefix.position() + n);
+        return n;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,52 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import ch.execve.hermes.classifier.HeaderMatcher;
+import java.util.List;
+
+/**
+ * Lists, for every header matcher, the patterns that have never matched since it was loaded, so
+ * rule lists can be pruned. Counts start over when the configuration is reloaded. For patterns
+ * that share a combined expression they are sampled, so check a rarely matching pattern against
+ * real mail before removing it.
+ */
+final class RuleReport {
+    private RuleReport() {}
+
+    static String format(List<LoadedClassifier> classifiers) {
+        var out = new StringBuilder();
+        for (LoadedClassifier loaded : classifiers) {
+            if (!(loaded.classifier() instanceof HeaderMatcher matcher)) {
+                continue;
+            }
+            List<HeaderMatcher.PatternHits> patterns = matcher.patternHits();
+            List<HeaderMatcher.PatternHits> dead = patterns.stream().filter(p -> p.hits() == 0).toList();
+            long hits = patterns.stream().mapToLong(HeaderMatcher.PatternHits::hits).sum();
+            out.append("rules ").append(loaded.name())
+                .append(" patterns=").append(patterns.size())
+                .append(" matches=").append(hits)
+                .append(" never_matched=").append(dead.size())
+                .append('\n');
+            for (HeaderMatcher.PatternHits pattern : dead) {
+                out.append("never_matched ").append(loaded.name())
+                    .append(' ').append(pattern.header())
+                    .append(' ').append(pattern.regex())
+                    .append('\n');
+            }
+        }
+        return out.toString();
+    }
+}
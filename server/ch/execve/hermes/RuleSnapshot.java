@@ -0,0 +1,123 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes;
+
+import ch.execve.hermes.classifier.Rule;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A binary copy of a configuration that has been loaded successfully: the classifier entries and,
+ * for header matchers, their parsed rules. Loading it skips JSON parsing and reflection at startup.
+ *
+ * <p>The snapshot records hashes of the files it was built from. It is only used while they are
+ * unchanged, so a stale snapshot is never a problem, just ignored.
+ */
+final class RuleSnapshot {
+    private static final int MAGIC = 0x48524d53; // "HRMS"
+    private static final int VERSION = 1;
+
+    /** One classifier. {@code headerRules} is empty unless the classifier is a HeaderMatcher. */
+    record Entry(ClassifierConfig config, HashCode rulesHash, Optional<ImmutableList<Rule>> headerRules) {}
+
+    private RuleSnapshot() {}
+
+    /** Reads the snapshot at {@code path} if it exists and was built from {@code configHash}. */
+    static Optional<List<Entry>> read(Path path, HashCode configHash) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !readHash(in).equals(configHash)) {
+                return Optional.empty();
+            }
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                var config = new ClassifierConfig(in.readUTF(), in.readUTF(), in.readUTF());
+                HashCode rulesHash = readHash(in);
+                Optional<ImmutableList<Rule>> rules = Optional.empty();
+                if (in.readBoolean()) {
+                    var builder = ImmutableList.<Rule>builder();
+                    int ruleCount = in.readInt();
+                    for (int r = 0; r < ruleCount; r++) {
+                        String header = in.readUTF();
+                        int regexCount = in.readInt();
+                        List<String> regexes = new ArrayList<>(regexCount);
+                        for (int x = 0; x < regexCount; x++) {
+                            regexes.add(in.readUTF());
+                        }
+                        builder.add(new Rule(header, regexes));
+                    }
+                    rules = Optional.of(builder.build());
+                }
+                entries.add(new Entry(config, rulesHash, rules));
+            }
+            return Optional.of(entries);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    /** Replaces the snapshot at {@code path} atomically. */
+    static void write(Path path, HashCode configHash, List<Entry> entries) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeHash(out, configHash);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.config().name());
+                out.writeUTF(entry.config().implementation());
+                out.writeUTF(entry.config().destination());
+                writeHash(out, entry.rulesHash());
+                out.writeBoolean(entry.headerRules().isPresent());
+                if (entry.headerRules().isPresent()) {
+                    out.writeInt(entry.headerRules().get().size());
+                    for (Rule rule : entry.headerRules().get()) {
+                        out.writeUTF(rule.header());
+                        out.writeInt(rule.regex().size());
+                        for (String regex : rule.regex()) {
+                            out.writeUTF(regex);
+                        }
+                    }
+                }
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static HashCode readHash(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedByte()];
+        in.readFully(bytes);
+        return HashCode.fromBytes(bytes);
+    }
+
+    private static void writeHash(DataOutputStream out, HashCode hash) throws IOException {
+        byte[] bytes = hash.asBytes();
+        out.writeByte(bytes.length);
+        out.write(bytes);
+    }
+}
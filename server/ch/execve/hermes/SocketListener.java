@@ -16,24 +16,30 @@ package ch.execve.hermes;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
+import jakarta.inject.Provider;
 import jakarta.inject.Singleton;
 import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
 import jakarta.mail.Session;
 import jakarta.mail.internet.MimeMessage;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.StandardProtocolFamily;
 import java.net.UnixDomainSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,41 +48,136 @@ class SocketListener {
 
     private static final Logger logger = LoggerFactory.getLogger(SocketListener.class);
     private static final int BUFFER_SIZE = 4096;
+    // Room for the connections of a delivery burst that arrives while the server is starting.
+    private static final int BACKLOG = 1024;
+    private static final int CHUNK_SIZE = 64 << 10;
+    // Idle chunks kept per in-flight slot; enough for a typical message without attachments.
+    private static final int POOLED_CHUNKS_PER_SLOT = 4;
+    private static final String ERROR_FOLDER = "INBOX.hermes-error";
     private final String socketPath;
-    private final Dispatcher dispatcher;
+    private final Provider<Dispatcher> dispatcherProvider;
+    // Set by start() before the first connection is accepted.
+    private Dispatcher dispatcher;
+    private ServerSocketChannel serverChannel;
     private final Session session;
-    
+    private final int maxInFlight;
+    private final boolean streamHeaders;
+    private final long maxMessageSize;
+    private final BufferPool bufferPool;
+    private final MaildirDelivery maildirDelivery;
+    private final LongAdder deliveryErrors;
+    private final LongAdder oversizedMessages;
+    private final LongAdder connections;
+    private final LongAdder connectionErrors;
+    private final LongAdder parseErrors;
+    private final LatencyHistogram requestLatency;
+    private final LatencyHistogram parseLatency;
+    private final LatencyHistogram frameLatency;
+    // Limits the number of messages being processed at once, across all connections. A legacy
+    // connection holds a slot from accept to close, a framed request while it is processed. The
+    // accept loop blocks on it, so excess clients wait in the kernel backlog instead of piling up
+    // in memory.
+    private final Semaphore inFlight;
+
     @Inject
-    public SocketListener(@Named("socketPath") String socketPath, Dispatcher dispatcher) {
+    public SocketListener(
+        @Named("socketPath") String socketPath,
+        @Named("maxInFlight") int maxInFlight,
+        @Named("streamHeaders") boolean streamHeaders,
+        @Named("maxMessageSize") long maxMessageSize,
+        Provider<Dispatcher> dispatcher,
+        MaildirDelivery maildirDelivery,
+        Metrics metrics) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1, got " + maxInFlight);
+        }
         this.socketPath = socketPath;
-        this.dispatcher = dispatcher;
+        this.dispatcherProvider = dispatcher;
         this.session = Session.getDefaultInstance(new Properties());
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.streamHeaders = streamHeaders;
+        this.maxMessageSize = maxMessageSize;
+        this.bufferPool = new BufferPool(CHUNK_SIZE, maxInFlight * POOLED_CHUNKS_PER_SLOT);
+        this.oversizedMessages = metrics.counter("socket.oversized");
+        this.maildirDelivery = maildirDelivery;
+        this.deliveryErrors = metrics.counter("maildir.errors");
+        this.connections = metrics.counter("socket.connections");
+        this.connectionErrors = metrics.counter("socket.errors");
+        this.parseErrors = metrics.counter("parse.errors");
+        this.requestLatency = metrics.histogram("socket.total");
+        this.parseLatency = metrics.histogram("parse.mime");
+        this.frameLatency = metrics.histogram("socket.framed_request");
+        metrics.gauge("socket.in_flight", () -> maxInFlight - inFlight.availablePermits());
+        metrics.gauge("socket.idle_buffers", bufferPool::idle);
     }
 
-    /** Starts the service listening on the Unix socket. */
+    /**
+     * Binds the socket without accepting connections yet. Clients that connect before {@link #start}
+     * wait in the backlog instead of being refused, e.g. while the classifiers are being loaded.
+     */
+    synchronized void bind() throws IOException {
+        if (serverChannel != null) {
+            return;
+        }
+        Path socket = Path.of(socketPath);
+        Files.deleteIfExists(socket);
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.bind(UnixDomainSocketAddress.of(socket), BACKLOG);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        serverChannel = channel;
+        logger.info("Bound {}, connections are queued until the server is ready", socket);
+    }
+
+    /**
+     * Starts the service listening on the Unix socket. If the classifiers can't be loaded, removes
+     * the socket and throws, so that the server fails instead of holding connections it will never
+     * answer.
+     */
     void start() {
         Path socket = Path.of(socketPath);
 
         try {
-            Files.deleteIfExists(socket);
+            bind();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        
-        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socket);
 
-        try (ServerSocketChannel serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
-            serverChannel.bind(address);
-            logger.info("Hermes Server listening on: {}", socket);
+        try {
+            // Loads the classifiers, unless something else has already asked for the dispatcher.
+            dispatcher = dispatcherProvider.get();
+        } catch (RuntimeException e) {
+            try {
+                serverChannel.close();
+                Files.deleteIfExists(socket);
+            } catch (IOException f) {
+                e.addSuppressed(f);
+            }
+            throw e;
+        }
+
+        try (ServerSocketChannel serverChannel = this.serverChannel;
+             ExecutorService workers = Executors.newThreadPerTaskExecutor(
+                 Thread.ofVirtual().name("hermes-client-", 0).factory())) {
+            logger.info("Hermes Server listening on: {} (max in flight: {})", socket, maxInFlight);
 
             while (true) {
-                // Blocks until a client (the Go binary) connects
-                try (SocketChannel clientChannel = serverChannel.accept()) {
-                    logger.info("Client connected. Processing email...");
-                    handleClient(clientChannel);
+                // Wait for a free slot before accepting, so that a burst is throttled by the backlog.
+                inFlight.acquire();
+                SocketChannel clientChannel;
+                try {
+                    // Blocks until a client (the C binary) connects
+                    clientChannel = serverChannel.accept();
                 } catch (IOException e) {
-                    logger.error("Error handling client connection", e);
+                    inFlight.release();
+                    logger.error("Error accepting client connection", e);
+                    continue;
                 }
+                workers.execute(() -> serve(clientChannel));
             }
 
         } catch (Throwable e) {
@@ -90,29 +191,211 @@ class SocketListener {
         }
     }
 
-    void handleClient(SocketChannel clientChannel) throws IOException {
-        // Use a ByteArrayOutputStream to collect the raw bytes of the email
-        ByteArrayOutputStream emailBytes = new ByteArrayOutputStream();
-        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
-        
-        // 1. Read the incoming data stream until EOF (client calls shutdown(SHUT_WR))
-        while (clientChannel.read(buffer) > 0) {
-            buffer.flip(); // Prepare buffer for reading
-            byte[] data = new byte[buffer.remaining()];
-            buffer.get(data);
-            emailBytes.write(data);
-            buffer.clear(); // Prepare buffer for writing
+    /** Handles a single accepted connection and releases its in-flight slot. */
+    private void serve(SocketChannel clientChannel) {
+        long start = System.nanoTime();
+        connections.increment();
+        boolean holdsSlot = true;
+        try (clientChannel) {
+            logger.debug("Client connected. Processing email...");
+            ByteBuffer prefix = readPrefix(clientChannel);
+            if (FramedProtocol.isMagic(prefix)) {
+                // Each framed request takes a slot of its own, so an idle session holds none.
+                inFlight.release();
+                holdsSlot = false;
+                handleFramed(clientChannel);
+            } else {
+                handleClient(new PrefixedChannel(prefix, clientChannel), clientChannel);
+            }
+        } catch (IOException e) {
+            connectionErrors.increment();
+            logger.error("Error handling client connection", e);
+        } finally {
+            requestLatency.recordSince(start);
+            if (holdsSlot) {
+                inFlight.release();
+            }
+        }
+    }
+
+    /**
+     * Reads just enough of the connection to tell whether it speaks the framed protocol: the whole
+     * magic, or up to the first byte that can't be part of it.
+     */
+    private static ByteBuffer readPrefix(SocketChannel clientChannel) throws IOException {
+        ByteBuffer prefix = ByteBuffer.allocate(FramedProtocol.MAGIC.length);
+        while (prefix.hasRemaining()) {
+            if (clientChannel.read(prefix) < 0 || prefix.get(0) != FramedProtocol.MAGIC[0]) {
+                break;
+            }
+        }
+        return prefix.flip();
+    }
+
+    /** Handles one legacy connection: a single message terminated by EOF. */
+    void handleClient(ReadableByteChannel clientChannel, WritableByteChannel responseChannel) throws IOException {
+        // Delivering on the server needs the whole message, so the body can't be skipped.
+        if (streamHeaders && dispatcher.headersOnly() && !maildirDelivery.enabled()) {
+            handleHeadersOnly(clientChannel, responseChannel);
+            return;
         }
 
+        // Read the incoming data stream until EOF (client calls shutdown(SHUT_WR))
+        try (ChunkedMessage message = ChunkedMessage.read(clientChannel, bufferPool, maxMessageSize)) {
+            if (message.oversized()) {
+                oversizedMessages.increment();
+                logger.warn("Rejecting message larger than {} bytes", maxMessageSize);
+                respond(responseChannel, ERROR_FOLDER);
+                drain(clientChannel);
+                return;
+            }
+            String response;
+            try {
+                Dispatcher.Result result = parseAndDispatch(message.inputStream());
+                response = deliverIfEnabled(result, message.buffers());
+            } catch (RuntimeException e) {
+                // Without an answer the client delivers nothing, and the message is lost.
+                logger.error("Failed to classify message", e);
+                response = ERROR_FOLDER;
+            }
+            respond(responseChannel, response);
+        }
+    }
+
+    /** Reads and discards the rest of the stream, so the client doesn't fail on a closed socket. */
+    private void drain(ReadableByteChannel clientChannel) throws IOException {
+        ByteBuffer scratch = bufferPool.acquire();
+        try {
+            while (clientChannel.read(scratch.clear()) >= 0) {
+                // discard
+            }
+        } finally {
+            bufferPool.release(scratch);
+        }
+    }
+
+    /**
+     * Handles a framed session. Each request is classified on its own virtual thread and answered
+     * as soon as it is done. Requests share the in-flight slots with all other connections; while
+     * none is free, reading stops until one of them finishes.
+     */
+    private void handleFramed(SocketChannel clientChannel) throws IOException {
+        var writeLock = new Object();
+        try (ExecutorService requests = Executors.newThreadPerTaskExecutor(
+                 Thread.ofVirtual().name("hermes-request-", 0).factory())) {
+            FramedProtocol.Frame frame;
+            while ((frame = FramedProtocol.readFrame(clientChannel, maxMessageSize)) != null) {
+                if (frame.oversized()) {
+                    oversizedMessages.increment();
+                    logger.warn("Rejecting request {} larger than {} bytes", frame.id(), maxMessageSize);
+                    synchronized (writeLock) {
+                        FramedProtocol.writeFrame(clientChannel, frame.id(), ERROR_FOLDER);
+                    }
+                    continue;
+                }
+                inFlight.acquireUninterruptibly();
+                var request = frame;
+                requests.execute(() -> {
+                    long start = System.nanoTime();
+                    try {
+                        String response;
+                        try {
+                            byte[] payload = request.payload();
+                            Dispatcher.Result result = parseAndDispatch(
+                                new ByteArrayInputStream(payload, 0, headerBlockLengthIfSufficient(payload)));
+                            response = deliverIfEnabled(result, ByteBuffer.wrap(payload));
+                        } catch (RuntimeException e) {
+                            // Every request must be answered, or the client waits for it forever.
+                            logger.error("Failed to classify request {}", request.id(), e);
+                            response = ERROR_FOLDER;
+                        }
+                        synchronized (writeLock) {
+                            FramedProtocol.writeFrame(clientChannel, request.id(), response);
+                        }
+                    } catch (IOException e) {
+                        connectionErrors.increment();
+                        logger.error("Failed to answer request {}", request.id(), e);
+                    } finally {
+                        frameLatency.recordSince(start);
+                        inFlight.release();
+                    }
+                });
+            }
+            // Closing the executor waits for the outstanding requests to be answered.
+        }
+    }
+
+    /**
+     * Delivers the message into its folder if server-side delivery is enabled and returns the
+     * response for the client. If delivery fails, the client is told to deliver the message itself.
+     * A duplicate whose first copy has been delivered is only reported as delivered; any other
+     * duplicate is written again.
+     */
+    private String deliverIfEnabled(Dispatcher.Result result, ByteBuffer... message) {
+        String folder = result.folder();
+        if (!maildirDelivery.enabled()) {
+            return folder;
+        }
+        if (result.delivered()) {
+            return MaildirDelivery.DELIVERED_MARKER + folder;
+        }
+        try {
+            maildirDelivery.deliver(folder, message);
+            dispatcher.delivered(result, true);
+            return MaildirDelivery.DELIVERED_MARKER + folder;
+        } catch (IOException e) {
+            dispatcher.delivered(result, false);
+            deliveryErrors.increment();
+            logger.error("Failed to deliver message to {}, leaving it to the client", folder, e);
+            return folder;
+        }
+    }
+
+    /** The length of the header block when no classifier needs the body, else of the whole message. */
+    private int headerBlockLengthIfSufficient(byte[] message) {
+        return dispatcher.headersOnly() ? HeaderBlockReader.headerLength(ByteBuffer.wrap(message)) : message.length;
+    }
+
+    /**
+     * Classifies the message from its header block alone. The response is sent before the body has
+     * been received; the body is then read and thrown away. Only the header block is buffered, so
+     * only it counts against the maximum message size.
+     */
+    private void handleHeadersOnly(ReadableByteChannel clientChannel, WritableByteChannel responseChannel) throws IOException {
+        var reader = new HeaderBlockReader(BUFFER_SIZE, maxMessageSize);
+        byte[] headers = reader.readHeaders(clientChannel);
         String response;
-        try (InputStream emailStream = new ByteArrayInputStream(emailBytes.toByteArray())) {
+        if (reader.oversized()) {
+            oversizedMessages.increment();
+            logger.warn("Rejecting message with headers larger than {} bytes", maxMessageSize);
+            response = ERROR_FOLDER;
+        } else {
+            try {
+                response = parseAndDispatch(new ByteArrayInputStream(headers)).folder();
+            } catch (RuntimeException e) {
+                logger.error("Failed to classify message", e);
+                response = ERROR_FOLDER;
+            }
+        }
+        respond(responseChannel, response);
+        long discarded = reader.drain(clientChannel);
+        logger.debug("Discarded {} body bytes", discarded);
+    }
+
+    private Dispatcher.Result parseAndDispatch(InputStream email) throws IOException {
+        try (InputStream emailStream = email) {
+            long start = System.nanoTime();
             Message message = new MimeMessage(session, emailStream);
-            response = dispatcher.dispatch(message);
+            parseLatency.recordSince(start);
+            return dispatcher.dispatch(message);
         } catch (MessagingException e) {
+            parseErrors.increment();
             logger.error("Failed to parse email", e);
-            response = "INBOX.hermes-error";
+            return new Dispatcher.Result(ERROR_FOLDER, false, null);
         }
+    }
 
+    private static void respond(WritableByteChannel clientChannel, String response) throws IOException {
         ByteBuffer responseBuffer = ByteBuffer.wrap(response.getBytes(StandardCharsets.UTF_8));
 
         clientChannel.write(responseBuffer);
@@ -0,0 +1,167 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes.classifier;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Multipart;
+import jakarta.mail.Part;
+import jakarta.mail.internet.ContentType;
+import jakarta.mail.internet.MimeUtility;
+import jakarta.mail.internet.ParseException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Matches phrases and regular expressions in the text of a message.
+ *
+ * <p>Inline {@code text/*} parts are decoded and scanned as a stream, so the body is never held in
+ * memory as a whole and attachments are skipped without being decoded. All phrases are found in a
+ * single pass by a {@link PhraseAutomaton}; regular expressions are matched against each line. The
+ * scan stops after {@code maxBytes} decoded bytes, counted over all parts.
+ */
+public class BodyMatcher implements Classifier {
+    private static final Logger logger = LoggerFactory.getLogger(BodyMatcher.class);
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+    // Longer lines are matched in pieces rather than buffered.
+    private static final int MAX_LINE_LENGTH = 4 * 1024;
+    // Guards against messages nested absurdly deep.
+    private static final int MAX_DEPTH = 16;
+
+    private final PhraseAutomaton phrases;
+    private final ImmutableList<Pattern> patterns;
+    private final long maxBytes;
+
+    public BodyMatcher(String rulesPath) {
+        this(RulesFiles.read(rulesPath, BodyRules.class), rulesPath);
+    }
+
+    /** Builds a matcher from rules that have already been parsed. */
+    public BodyMatcher(BodyRules rules, String source) {
+        if (rules.maxBytes() <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive in " + source);
+        }
+        int flags = rules.caseSensitive() ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        this.phrases = new PhraseAutomaton(rules.phrases(), rules.caseSensitive());
+        this.patterns = rules.regex().stream()
+            .map(regex -> {
+                String simplified = RegexAnalysis.simplifyForFind(regex);
+                RegexAnalysis.risks(simplified).forEach(risk -> logger.warn("Pattern '{}' in {} {}", regex, source, risk));
+                return Pattern.compile(simplified, flags);
+            })
+            .collect(ImmutableList.toImmutableList());
+        this.maxBytes = rules.maxBytes();
+        logger.info("Successfully loaded {} phrases and {} patterns from {}", rules.phrases().size(), patterns.size(), source);
+    }
+
+    @Override
+    public boolean classify(Message email) {
+        if (phrases.isEmpty() && patterns.isEmpty()) {
+            return false;
+        }
+        try {
+            return scan(email, new long[] {maxBytes}, 0);
+        } catch (IOException | MessagingException e) {
+            logger.warn("Could not read message body", e);
+            return false;
+        }
+    }
+
+    /** Scans {@code part} and its children; {@code budget[0]} is the number of bytes left to read. */
+    private boolean scan(Part part, long[] budget, int depth) throws IOException, MessagingException {
+        if (budget[0] <= 0 || depth > MAX_DEPTH || Part.ATTACHMENT.equalsIgnoreCase(part.getDisposition())) {
+            return false;
+        }
+        if (part.isMimeType("text/*")) {
+            return scanText(part, budget);
+        }
+        if (part.isMimeType("multipart/*") && part.getContent() instanceof Multipart multipart) {
+            for (int i = 0; i < multipart.getCount(); i++) {
+                if (scan(multipart.getBodyPart(i), budget, depth + 1)) {
+                    return true;
+                }
+            }
+        } else if (part.isMimeType("message/rfc822") && part.getContent() instanceof Part inner) {
+            return scan(inner, budget, depth + 1);
+        }
+        return false;
+    }
+
+    private boolean scanText(Part part, long[] budget) throws IOException, MessagingException {
+        var counted = new CountingInputStream(ByteStreams.limit(part.getInputStream(), budget[0]));
+        try (Reader reader = new InputStreamReader(counted, charset(part))) {
+            var scanner = phrases.scanner();
+            var line = new StringBuilder();
+            char[] chunk = new char[CHUNK_SIZE];
+            int n;
+            while ((n = reader.read(chunk)) > 0) {
+                Deadline.check();
+                for (int i = 0; i < n; i++) {
+                    char c = chunk[i];
+                    if (scanner.feed(c)) {
+                        return true;
+                    }
+                    if (patterns.isEmpty()) {
+                        continue;
+                    }
+                    if (c == '\n' || line.length() >= MAX_LINE_LENGTH) {
+                        if (matchesLine(line)) {
+                            return true;
+                        }
+                        line.setLength(0);
+                    }
+                    if (c != '\n' && c != '\r') {
+                        line.append(c);
+                    }
+                }
+            }
+            return matchesLine(line);
+        } finally {
+            budget[0] -= counted.getCount();
+        }
+    }
+
+    private boolean matchesLine(CharSequence line) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(Deadline.guard(line)).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Charset charset(Part part) throws MessagingException {
+        try {
+            String name = new ContentType(part.getContentType()).getParameter("charset");
+            if (name != null) {
+                return Charset.forName(MimeUtility.javaCharset(name));
+            }
+        } catch (ParseException | IllegalArgumentException e) {
+            logger.debug("Unknown charset in '{}', reading as UTF-8", part.getContentType());
+        }
+        // US-ASCII is the default, and UTF-8 reads it just the same.
+        return StandardCharsets.UTF_8;
+    }
+}
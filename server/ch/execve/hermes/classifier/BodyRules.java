@@ -0,0 +1,32 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes.classifier;
+
+import java.util.List;
+
+/**
+ * The rules of a {@link BodyMatcher}: literal phrases, regular expressions matched line by line,
+ * and how many decoded bytes of the body to scan at most. Missing fields get their defaults.
+ */
+public record BodyRules(List<String> phrases, List<String> regex, Long maxBytes, Boolean caseSensitive) {
+    public static final long DEFAULT_MAX_BYTES = 64 * 1024;
+
+    public BodyRules {
+        phrases = phrases == null ? List.of() : List.copyOf(phrases);
+        regex = regex == null ? List.of() : List.copyOf(regex);
+        maxBytes = maxBytes == null ? DEFAULT_MAX_BYTES : maxBytes;
+        caseSensitive = caseSensitive != null && caseSensitive;
+    }
+}
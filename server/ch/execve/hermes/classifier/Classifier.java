@@ -14,9 +14,49 @@
 
 package ch.execve.hermes.classifier;
 
+import com.google.common.collect.ImmutableSet;
 import jakarta.mail.Message;
+import java.util.Optional;
 
+/**
+ * Decides whether an email belongs to a destination.
+ *
+ * <p>A single instance is shared by all connections the server handles concurrently, so
+ * implementations must be thread-safe.
+ *
+ * <p>Each call runs under a {@link Deadline}. Implementations that can take long, e.g. because they
+ * run user-supplied regular expressions, should match against {@link Deadline#guard guarded} text
+ * or call {@link Deadline#check} from time to time.
+ */
 @FunctionalInterface
 public interface Classifier {
     boolean classify(Message email);
+
+    /**
+     * Classifies a message whose headers have already been parsed. The dispatcher always calls this
+     * overload; the default adapts it to {@link #classify(Message)}, so implementations only need to
+     * override it to take advantage of the pre-decoded headers.
+     */
+    default boolean classify(ParsedMessage email) {
+        return classify(email.message());
+    }
+
+    /**
+     * Whether this classifier looks at the message body. If no configured classifier does, the
+     * server may classify a message as soon as its headers have arrived and skip buffering the body.
+     * Defaults to {@code true}, which is always safe.
+     */
+    default boolean needsBody() {
+        return true;
+    }
+
+    /**
+     * The names of the headers this classifier's decision depends on, if that is all it depends on.
+     * When every configured classifier declares its headers, the dispatcher may reuse an earlier
+     * result for a message with identical values of those headers. Defaults to empty, which means
+     * the decision may depend on anything and is never cached.
+     */
+    default Optional<ImmutableSet<String>> referencedHeaders() {
+        return Optional.empty();
+    }
 }
@@ -0,0 +1,127 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes.classifier;
+
+/**
+ * A time limit for the classifier running on the current thread.
+ *
+ * <p>The dispatcher starts one around each classifier call. Classifiers that may run for a long
+ * time call {@link #check} now and then, and wrap text they run regular expressions over in
+ * {@link #guard}, so that a pathological pattern gives up instead of backtracking for seconds.
+ * Either way the classifier ends with {@link ExceededException}, which the dispatcher treats as no
+ * match.
+ */
+public final class Deadline {
+    // How many characters a guarded sequence hands out between two looks at the clock.
+    private static final int CHECK_INTERVAL = 1024;
+    private static final ThreadLocal<Deadline> current = new ThreadLocal<>();
+
+    /** Thrown by {@link #check} and guarded sequences once the deadline has passed. */
+    public static final class ExceededException extends RuntimeException {
+        private ExceededException() {
+            super("Classifier deadline exceeded", null, false, false);
+        }
+    }
+
+    /** Ends the deadline started by {@link #start}. */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final long expiresAt;
+
+    private Deadline(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Starts a deadline {@code timeoutNanos} from now for the current thread, replacing any other
+     * until the returned scope is closed. A timeout of 0 or less means no deadline.
+     */
+    public static Scope start(long timeoutNanos) {
+        Deadline previous = current.get();
+        if (timeoutNanos > 0) {
+            current.set(new Deadline(System.nanoTime() + timeoutNanos));
+        } else {
+            current.remove();
+        }
+        return () -> {
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+        };
+    }
+
+    /** Throws {@link ExceededException} if the current thread's deadline has passed. */
+    public static void check() {
+        Deadline deadline = current.get();
+        if (deadline != null) {
+            deadline.checkNow();
+        }
+    }
+
+    /**
+     * Returns {@code text} wrapped so that reading it throws {@link ExceededException} once the
+     * current thread's deadline has passed, or {@code text} itself if there is no deadline.
+     */
+    public static CharSequence guard(CharSequence text) {
+        Deadline deadline = current.get();
+        return deadline == null ? text : new Guarded(text, deadline);
+    }
+
+    private void checkNow() {
+        if (System.nanoTime() - expiresAt > 0) {
+            throw new ExceededException();
+        }
+    }
+
+    private static final class Guarded implements CharSequence {
+        private final CharSequence text;
+        private final Deadline deadline;
+        private int untilCheck = CHECK_INTERVAL;
+
+        Guarded(CharSequence text, Deadline deadline) {
+            this.text = text;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (--untilCheck == 0) {
+                untilCheck = CHECK_INTERVAL;
+                deadline.checkNow();
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new Guarded(text.subSequence(start, end), deadline);
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
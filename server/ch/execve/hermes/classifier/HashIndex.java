@@ -0,0 +1,185 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes.classifier;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A set of strings stored as 64-bit fingerprints in an open-addressing hash table, in a file that
+ * is memory-mapped rather than read into the heap.
+ *
+ * <p>The index is built from a plain text list, one entry per line, with {@code #} comments. It
+ * records the size and modification time of the list, and is rebuilt when they change. Lookups
+ * can report false positives when two entries share a fingerprint, which at 64 bits takes
+ * billions of entries to become likely.
+ */
+final class HashIndex {
+    private static final int MAGIC = 0x48494458; // "HIDX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    // 0 marks an empty slot, so a fingerprint of 0 is stored as 1.
+    private static final long EMPTY = 0;
+    private static final HashFunction FINGERPRINT = Hashing.farmHashFingerprint64();
+
+    private final LongBuffer slots;
+    private final int mask;
+    private final int size;
+    private final long sourceSize;
+    private final long sourceModified;
+
+    private HashIndex(ByteBuffer mapped) throws IOException {
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+            throw new IOException("Not a hash index");
+        }
+        this.sourceSize = mapped.getLong(8);
+        this.sourceModified = mapped.getLong(16);
+        this.size = mapped.getInt(24);
+        int capacity = mapped.getInt(28);
+        this.slots = mapped.slice(HEADER_SIZE, capacity * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Maps the index of {@code list} at {@code indexFile}, first (re)building it if it is missing
+     * or out of date.
+     */
+    static HashIndex open(Path list, Path indexFile) throws IOException {
+        long listSize = Files.size(list);
+        long listModified = Files.getLastModifiedTime(list).toMillis();
+        if (Files.exists(indexFile)) {
+            try {
+                HashIndex existing = map(indexFile);
+                if (existing.builtFrom(listSize, listModified)) {
+                    return existing;
+                }
+            } catch (IOException e) {
+                // Truncated or from an older version; rebuild it.
+            }
+        }
+        build(list, listSize, listModified, indexFile);
+        return map(indexFile);
+    }
+
+    private static HashIndex map(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Truncated hash index " + indexFile);
+            }
+            return new HashIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static void build(Path list, long listSize, long listModified, Path indexFile) throws IOException {
+        long[] fingerprints = new long[1024];
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(list, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String entry = normalize(line);
+                if (entry.isEmpty()) {
+                    continue;
+                }
+                if (count == fingerprints.length) {
+                    fingerprints = Arrays.copyOf(fingerprints, count * 2);
+                }
+                fingerprints[count++] = fingerprint(entry);
+            }
+        }
+        // At most half full, so that probe sequences stay short.
+        int capacity = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+        long[] table = new long[capacity];
+        int stored = 0;
+        for (int i = 0; i < count; i++) {
+            long fingerprint = fingerprints[i];
+            int slot = (int) fingerprint & (capacity - 1);
+            while (table[slot] != EMPTY && table[slot] != fingerprint) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            if (table[slot] == EMPTY) {
+                table[slot] = fingerprint;
+                stored++;
+            }
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + capacity * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putLong(listSize).putLong(listModified).putInt(stored).putInt(capacity);
+        out.asLongBuffer().put(table);
+        out.clear();
+        // A fresh temp file per build, so that concurrent builders never write into each other's file.
+        Path tmp = Files.createTempFile(indexFile.toAbsolutePath().getParent(), indexFile.getFileName() + ".", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            }
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Lower-cases a list entry or lookup key and strips comments and surrounding whitespace. */
+    static String normalize(String entry) {
+        int comment = entry.indexOf('#');
+        String stripped = (comment < 0 ? entry : entry.substring(0, comment)).strip();
+        return stripped.toLowerCase(Locale.ROOT);
+    }
+
+    private static long fingerprint(String entry) {
+        long fingerprint = FINGERPRINT.hashString(entry, StandardCharsets.UTF_8).asLong();
+        return fingerprint == EMPTY ? 1 : fingerprint;
+    }
+
+    /** Whether {@code key}, which must already be normalized, is in the set. */
+    boolean contains(String key) {
+        long fingerprint = fingerprint(key);
+        int slot = (int) fingerprint & mask;
+        while (true) {
+            long stored = slots.get(slot);
+            if (stored == fingerprint) {
+                return true;
+            }
+            if (stored == EMPTY) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Whether the list this index was built from still has the given size and modification time. */
+    boolean builtFrom(long listSize, long listModified) {
+        return sourceSize == listSize && sourceModified == listModified;
+    }
+}
@@ -1,71 +1,277 @@
 package ch.execve.hermes.classifier;
 
-import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import jakarta.mail.Message;
-import jakarta.mail.internet.MimeUtility;
-import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import jakarta.mail.MessagingException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class HeaderMatcher implements Classifier {
 
-    private record CompiledRule(String header, ImmutableList<Pattern> patterns) {}
-    private final ImmutableList<CompiledRule> rules;
+    /** How often a pattern has matched since the matcher was loaded. */
+    public record PatternHits(String header, String regex, long hits) {}
+
+    /** One expression from the rules file, and how often it was the one that matched. */
+    private record Member(String header, String regex, Pattern pattern, LongAdder hits) {}
+
+    /**
+     * A unit of evaluation: one header and a pattern to find in its values. Most of a header's
+     * patterns are folded into a single alternation so that every decoded value is scanned once;
+     * the rest are patterns that cannot be safely embedded into a larger expression and get a probe
+     * of their own.
+     */
+    private static final class Probe {
+        final String header;
+        final Pattern pattern;
+        final ImmutableList<Member> members;
+        final int fileOrder;
+        final LongAdder evaluations = new LongAdder();
+        final LongAdder hits = new LongAdder();
+        final LongAdder sampledNanos = new LongAdder();
+        final LongAdder samples = new LongAdder();
+
+        Probe(String header, Pattern pattern, ImmutableList<Member> members, int fileOrder) {
+            this.header = header;
+            this.pattern = pattern;
+            this.members = members;
+            this.fileOrder = fileOrder;
+        }
+
+        boolean matches(List<String> values) {
+            // Timing every evaluation would cost about as much as a cheap pattern does.
+            boolean sample = ThreadLocalRandom.current().nextInt(COST_SAMPLE_RATE) == 0;
+            long start = sample ? System.nanoTime() : 0;
+            boolean matched = false;
+            for (String value : values) {
+                // Gives up with Deadline.ExceededException if the patterns backtrack for too long.
+                if (pattern.matcher(Deadline.guard(value)).find()) {
+                    matched = true;
+                    break;
+                }
+            }
+            if (sample) {
+                sampledNanos.add(System.nanoTime() - start);
+                samples.increment();
+            }
+            evaluations.increment();
+            if (matched) {
+                hits.increment();
+                if (members.size() == 1) {
+                    members.get(0).hits().increment();
+                } else if (ThreadLocalRandom.current().nextInt(ATTRIBUTION_SAMPLE_RATE) == 0) {
+                    attribute(values);
+                }
+            }
+            return matched;
+        }
+
+        /**
+         * Credits a sampled hit of a combined pattern to the first member that matches on its own,
+         * scaled up to estimate the hits of all matches.
+         */
+        private void attribute(List<String> values) {
+            try {
+                for (Member member : members) {
+                    for (String value : values) {
+                        if (member.pattern().matcher(Deadline.guard(value)).find()) {
+                            member.hits().add(ATTRIBUTION_SAMPLE_RATE);
+                            return;
+                        }
+                    }
+                }
+            } catch (Deadline.ExceededException e) {
+                // Only bookkeeping is left; the message has matched either way.
+            }
+        }
+
+        /**
+         * Expected matches per nanosecond spent. A probe is only evaluated when its header is
+         * present, which scales its chance of matching and its expected cost alike, so this
+         * ranks probes by their value per message.
+         */
+        double score() {
+            double matchRate = (hits.sum() + 1.0) / (evaluations.sum() + 2.0);
+            long sampled = samples.sum();
+            double cost = sampled == 0 ? 1.0 : Math.max(1.0, (double) sampledNanos.sum() / sampled);
+            return matchRate / cost;
+        }
+    }
+
+    // Backreferences are renumbered by the enclosing alternation, \Q quotes the rest of the
+    // expression and comment mode swallows the closing parenthesis.
+    private static final Pattern NOT_COMBINABLE = Pattern.compile("\\\\[1-9]|\\\\k<|\\\\Q|\\(\\?[a-zA-Z-]*x");
+    // One evaluation in this many is timed.
+    private static final int COST_SAMPLE_RATE = 16;
+    // Matches of a combined pattern are credited to the member that caused them for one in this many,
+    // since finding that member costs another scan per member.
+    private static final int ATTRIBUTION_SAMPLE_RATE = 16;
+    // The evaluation order is recomputed after this many messages.
+    private static final int REORDER_INTERVAL = 4096;
+
+    private final ImmutableList<Rule> rules;
+    private final ImmutableList<Member> members;
+    // Every probe, ordered by score. Any match gives the same answer, so the order is free to
+    // change; it is replaced as a whole so concurrent classifications see a consistent list.
+    private volatile ImmutableList<Probe> order;
+    private final ImmutableSet<String> referencedHeaders;
+    private final AtomicLong classified = new AtomicLong();
+    private final AtomicBoolean reordering = new AtomicBoolean();
     private static final Logger logger = LoggerFactory.getLogger(HeaderMatcher.class);
 
     public HeaderMatcher(String rulesPath) {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.enable(JsonParser.Feature.ALLOW_YAML_COMMENTS);
-        try {
-            byte[] jsonData = Files.readAllBytes(Paths.get(rulesPath));
-            List<Rule> loadedRules = mapper.readValue(jsonData, new TypeReference<>() {});
-            this.rules = loadedRules.stream()
-                .map(rule -> new CompiledRule(rule.header(), rule.regex().stream()
-                    .map(Pattern::compile).collect(ImmutableList.toImmutableList())))
-                .collect(ImmutableList.toImmutableList());
-            logger.info("Successfully loaded {} rules from {}", this.rules.size(), rulesPath);
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Could not read or parse JSON rules file: " + rulesPath, e);
+        this(RulesFiles.read(rulesPath, new TypeReference<List<Rule>>() {}), rulesPath);
+    }
+
+    /** Builds a matcher from rules that have already been parsed, e.g. from a rule snapshot. */
+    public HeaderMatcher(List<Rule> rules, String source) {
+        this.rules = ImmutableList.copyOf(rules);
+        List<Member> allMembers = new ArrayList<>();
+        this.order = buildProbes(rules, allMembers);
+        this.members = ImmutableList.copyOf(allMembers);
+        this.referencedHeaders = order.stream()
+            .map(probe -> probe.header.toLowerCase(Locale.ROOT))
+            .collect(ImmutableSet.toImmutableSet());
+        logger.info("Successfully loaded {} rules for {} headers from {}", rules.size(), referencedHeaders.size(), source);
+    }
+
+    /** The rules this matcher was built from, in file order. */
+    public ImmutableList<Rule> rules() {
+        return rules;
+    }
+
+    /**
+     * How often each pattern matched since this matcher was loaded, grouped by header in file
+     * order. Evaluation stops at the first match, so a pattern only gets a hit when no pattern
+     * tried before it matched; one with none never decided a message and could be removed without
+     * changing any result seen so far. Patterns folded into a combined expression are only credited
+     * for a sample of its matches, so their counts are estimates and one that rarely decides a
+     * message may show none.
+     */
+    public ImmutableList<PatternHits> patternHits() {
+        return members.stream()
+            .map(m -> new PatternHits(m.header(), m.regex(), m.hits().sum()))
+            .collect(ImmutableList.toImmutableList());
+    }
+
+    private static ImmutableList<Probe> buildProbes(List<Rule> rules, List<Member> allMembers) {
+        // Header names are case-insensitive; keep the first spelling and the file order.
+        Map<String, String> spelling = new LinkedHashMap<>();
+        Map<String, List<String>> regexesByHeader = new LinkedHashMap<>();
+        for (Rule rule : rules) {
+            String key = rule.header().toLowerCase(Locale.ROOT);
+            spelling.putIfAbsent(key, rule.header());
+            regexesByHeader.computeIfAbsent(key, k -> new ArrayList<>()).addAll(rule.regex());
+        }
+        List<Probe> probes = new ArrayList<>();
+        regexesByHeader.forEach((key, regexes) -> compileHeader(spelling.get(key), regexes, probes, allMembers));
+        return ImmutableList.copyOf(probes);
+    }
+
+    private static void compileHeader(String header, List<String> regexes, List<Probe> probes, List<Member> allMembers) {
+        var combinable = new ArrayList<Member>();
+        var standalone = new ArrayList<Member>();
+        for (String original : regexes) {
+            String regex = RegexAnalysis.simplifyForFind(original);
+            for (String risk : RegexAnalysis.risks(regex)) {
+                logger.warn("Pattern '{}' for header '{}' {}", original, header, risk);
+            }
+            // Compile each expression on its own first, so that syntax errors point at the culprit.
+            var member = new Member(header, original, Pattern.compile(regex), new LongAdder());
+            allMembers.add(member);
+            if (NOT_COMBINABLE.matcher(regex).find()) {
+                standalone.add(member);
+            } else {
+                combinable.add(member);
+            }
+        }
+        if (combinable.size() >= 2) {
+            try {
+                Pattern combined = Pattern.compile(
+                    combinable.stream().map(m -> "(?:" + m.pattern().pattern() + ")").collect(Collectors.joining("|")));
+                probes.add(new Probe(header, combined, ImmutableList.copyOf(combinable), probes.size()));
+                combinable.clear();
+            } catch (PatternSyntaxException e) {
+                // E.g. the same named group used in two expressions. Fall back to one pass per pattern.
+                logger.warn("Could not combine patterns for header '{}', evaluating them separately", header, e);
+            }
+        }
+        for (Member member : combinable) {
+            probes.add(new Probe(header, member.pattern(), ImmutableList.of(member), probes.size()));
+        }
+        for (Member member : standalone) {
+            probes.add(new Probe(header, member.pattern(), ImmutableList.of(member), probes.size()));
         }
     }
 
     @Override
     public boolean classify(Message email) {
-        for (CompiledRule rule : rules) {
-            String[] headerValues;
-            try {
-                headerValues = email.getHeader(rule.header());
-            } catch (jakarta.mail.MessagingException e) {
-                logger.warn("Could not read header '{}' from email", rule.header(), e);
-                continue; // Skip this rule if header can't be read
+        try {
+            return classify(ParsedMessage.of(email));
+        } catch (MessagingException e) {
+            logger.warn("Could not read headers from email", e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean classify(ParsedMessage email) {
+        try {
+            for (Probe probe : order) {
+                List<String> values = email.headers(probe.header);
+                if (!values.isEmpty() && probe.matches(values)) {
+                    return true;
+                }
             }
-            if (headerValues == null) {
-                continue;
+            return false;
+        } finally {
+            if (classified.incrementAndGet() % REORDER_INTERVAL == 0) {
+                reorder();
             }
-            for (Pattern pattern : rule.patterns()) {
-                for (String headerValue : headerValues) {
-                    String decodedValue;
-                    try {
-                        decodedValue = MimeUtility.decodeText(headerValue);
-                    } catch (UnsupportedEncodingException e) {
-                        logger.warn("Could not decode header value: {}", headerValue, e);
-                        decodedValue = headerValue;
-                    }
-                    if (pattern.matcher(decodedValue).find()) {
-                        return true;
-                    }
-                }
+        }
+    }
+
+    /** Puts cheap, frequently matching probes first. Ties keep the file order. */
+    private void reorder() {
+        if (!reordering.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            ImmutableList<Probe> current = order;
+            ImmutableList<Probe> reordered = current.stream()
+                .sorted(Comparator.comparingDouble(Probe::score).reversed().thenComparingInt(p -> p.fileOrder))
+                .collect(ImmutableList.toImmutableList());
+            if (!reordered.equals(current)) {
+                order = reordered;
+                logger.debug("Reordered {} patterns for {} headers", members.size(), referencedHeaders.size());
             }
+        } finally {
+            reordering.set(false);
         }
+    }
+
+    @Override
+    public boolean needsBody() {
         return false;
     }
+
+    @Override
+    public Optional<ImmutableSet<String>> referencedHeaders() {
+        return Optional.of(referencedHeaders);
+    }
 }
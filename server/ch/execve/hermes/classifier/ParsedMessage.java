@@ -0,0 +1,149 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes.classifier;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import jakarta.mail.Header;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Multipart;
+import jakarta.mail.Part;
+import jakarta.mail.internet.MimeUtility;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An immutable view of a message whose headers have been read and decoded once.
+ *
+ * <p>The dispatcher builds one per message and hands it to every classifier, so header lookups
+ * are map lookups rather than scans of the raw header block. The text body is only decoded when
+ * a classifier first asks for it.
+ */
+public final class ParsedMessage {
+    private static final Logger logger = LoggerFactory.getLogger(ParsedMessage.class);
+
+    private final Message message;
+    private final ImmutableSortedMap<String, ImmutableList<String>> rawHeaders;
+    private final ImmutableSortedMap<String, ImmutableList<String>> decodedHeaders;
+    private final Supplier<String> body;
+
+    private ParsedMessage(
+        Message message,
+        ImmutableSortedMap<String, ImmutableList<String>> rawHeaders,
+        ImmutableSortedMap<String, ImmutableList<String>> decodedHeaders) {
+        this.message = message;
+        this.rawHeaders = rawHeaders;
+        this.decodedHeaders = decodedHeaders;
+        this.body = Suppliers.memoize(() -> decodeBody(message));
+    }
+
+    /** Reads and decodes all headers of {@code message}. */
+    public static ParsedMessage of(Message message) throws MessagingException {
+        Map<String, List<String>> raw = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Enumeration<Header> headers = message.getAllHeaders();
+        while (headers.hasMoreElements()) {
+            Header header = headers.nextElement();
+            raw.computeIfAbsent(header.getName(), k -> new ArrayList<>()).add(header.getValue());
+        }
+
+        var rawBuilder = ImmutableSortedMap.<String, ImmutableList<String>>orderedBy(String.CASE_INSENSITIVE_ORDER);
+        var decodedBuilder = ImmutableSortedMap.<String, ImmutableList<String>>orderedBy(String.CASE_INSENSITIVE_ORDER);
+        for (var entry : raw.entrySet()) {
+            rawBuilder.put(entry.getKey(), ImmutableList.copyOf(entry.getValue()));
+            decodedBuilder.put(entry.getKey(), entry.getValue().stream()
+                .map(ParsedMessage::decode)
+                .collect(ImmutableList.toImmutableList()));
+        }
+        return new ParsedMessage(message, rawBuilder.build(), decodedBuilder.build());
+    }
+
+    private static String decode(String value) {
+        try {
+            return MimeUtility.decodeText(value);
+        } catch (UnsupportedEncodingException e) {
+            logger.warn("Could not decode header value: {}", value, e);
+            return value;
+        }
+    }
+
+    /** The underlying message, for classifiers that need more than headers and text. */
+    public Message message() {
+        return message;
+    }
+
+    /** All decoded values of the header {@code name}, in message order. Empty if absent. */
+    public ImmutableList<String> headers(String name) {
+        return decodedHeaders.getOrDefault(name, ImmutableList.of());
+    }
+
+    /** The first decoded value of the header {@code name}. */
+    public Optional<String> header(String name) {
+        return headers(name).stream().findFirst();
+    }
+
+    /** All values of the header {@code name} as they appear in the message. Empty if absent. */
+    public ImmutableList<String> rawHeaders(String name) {
+        return rawHeaders.getOrDefault(name, ImmutableList.of());
+    }
+
+    /** The first value of the header {@code name} as it appears in the message. */
+    public Optional<String> rawHeader(String name) {
+        return rawHeaders(name).stream().findFirst();
+    }
+
+    /**
+     * The decoded text of all inline {@code text/*} parts, concatenated. Decoded on first use;
+     * attachments are never read.
+     */
+    public String body() {
+        return body.get();
+    }
+
+    private static String decodeBody(Part part) {
+        var text = new StringBuilder();
+        try {
+            appendText(part, text);
+        } catch (IOException | MessagingException e) {
+            logger.warn("Could not decode message body", e);
+        }
+        return text.toString();
+    }
+
+    private static void appendText(Part part, StringBuilder text) throws IOException, MessagingException {
+        if (Part.ATTACHMENT.equalsIgnoreCase(part.getDisposition())) {
+            return;
+        }
+        if (part.isMimeType("text/*")) {
+            if (part.getContent() instanceof String content) {
+                text.append(content);
+            }
+        } else if (part.isMimeType("multipart/*") && part.getContent() instanceof Multipart multipart) {
+            for (int i = 0; i < multipart.getCount(); i++) {
+                appendText(multipart.getBodyPart(i), text);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes.classifier;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An Aho-Corasick automaton that finds any of a set of phrases in one pass over a text, however
+ * many phrases there are. The text can be fed in pieces, so phrases are found across chunk and line
+ * boundaries.
+ *
+ * <p>Runs of whitespace in both the phrases and the text are treated as a single space, so that a
+ * phrase still matches when the sender's mailer wrapped it onto the next line.
+ */
+final class PhraseAutomaton {
+    private static final int ROOT = 0;
+
+    private final boolean caseSensitive;
+    // Maps each character that occurs in a phrase to a column of the transition table; all other
+    // characters map to column 0, which always leads back to the root.
+    private final char[] columns = new char[Character.MAX_VALUE + 1];
+    private final int width;
+    private final int[] next;
+    private final boolean[] accepting;
+
+    PhraseAutomaton(List<String> phrases, boolean caseSensitive) {
+        this.caseSensitive = caseSensitive;
+        List<String> normalized = new ArrayList<>();
+        for (String phrase : phrases) {
+            String p = normalize(phrase);
+            if (!p.isEmpty()) {
+                normalized.add(p);
+            }
+        }
+
+        int alphabet = 0;
+        for (String phrase : normalized) {
+            for (int i = 0; i < phrase.length(); i++) {
+                char c = phrase.charAt(i);
+                if (columns[c] == 0) {
+                    columns[c] = (char) ++alphabet;
+                }
+            }
+        }
+        this.width = alphabet + 1;
+
+        // Build the trie.
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<Boolean> terminal = new ArrayList<>();
+        trie.add(new HashMap<>());
+        terminal.add(false);
+        for (String phrase : normalized) {
+            int state = ROOT;
+            for (int i = 0; i < phrase.length(); i++) {
+                Integer child = trie.get(state).get(phrase.charAt(i));
+                if (child == null) {
+                    child = trie.size();
+                    trie.get(state).put(phrase.charAt(i), child);
+                    trie.add(new HashMap<>());
+                    terminal.add(false);
+                }
+                state = child;
+            }
+            terminal.set(state, true);
+        }
+
+        // Turn it into a complete transition table, breadth first along the failure links.
+        int states = trie.size();
+        this.next = new int[states * width];
+        this.accepting = new boolean[states];
+        int[] failure = new int[states];
+        var queue = new ArrayDeque<Integer>();
+        for (var edge : trie.get(ROOT).entrySet()) {
+            next[ROOT * width + columns[edge.getKey()]] = edge.getValue();
+            queue.add(edge.getValue());
+        }
+        accepting[ROOT] = terminal.get(ROOT);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            accepting[state] = terminal.get(state) || accepting[failure[state]];
+            for (int column = 0; column < width; column++) {
+                next[state * width + column] = next[failure[state] * width + column];
+            }
+            for (var edge : trie.get(state).entrySet()) {
+                int child = edge.getValue();
+                int column = columns[edge.getKey()];
+                failure[child] = next[failure[state] * width + column];
+                next[state * width + column] = child;
+                queue.add(child);
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return next.length <= width;
+    }
+
+    /** Starts scanning a new text. */
+    Scanner scanner() {
+        return new Scanner();
+    }
+
+    /** The position of a scan in the automaton. Not thread-safe; use one per text. */
+    final class Scanner {
+        private int state = ROOT;
+        private boolean afterSpace = true;
+
+        /** Feeds one character. Returns true once any phrase has been seen. */
+        boolean feed(char c) {
+            if (Character.isWhitespace(c)) {
+                if (afterSpace) {
+                    return false;
+                }
+                afterSpace = true;
+                c = ' ';
+            } else {
+                afterSpace = false;
+                if (!caseSensitive) {
+                    c = Character.toLowerCase(c);
+                }
+            }
+            state = next[state * width + columns[c]];
+            return accepting[state];
+        }
+    }
+
+    private String normalize(String phrase) {
+        String collapsed = phrase.strip().replaceAll("\\s+", " ");
+        return caseSensitive ? collapsed : collapsed.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,173 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes.classifier;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Load-time checks and rewrites for user-supplied regular expressions that are run with
+ * {@link java.util.regex.Matcher#find()}.
+ *
+ * <p>This is a lexical scan, not a parser: it recognizes escapes, character classes and groups
+ * well enough to spot the usual causes of catastrophic backtracking, and errs on the side of
+ * leaving a pattern alone.
+ */
+final class RegexAnalysis {
+    private RegexAnalysis() {}
+
+    /**
+     * Drops a leading and a trailing greedy {@code .*}. With {@code find()} they never change
+     * whether a pattern matches, but a leading one makes every search quadratic in the input.
+     */
+    static String simplifyForFind(String regex) {
+        if (regex.contains("\\Q") || hasCommentsFlag(regex)) {
+            return regex;
+        }
+        String simplified = regex;
+        if (simplified.startsWith(".*") && (simplified.length() == 2 || "?+{".indexOf(simplified.charAt(2)) < 0)) {
+            simplified = simplified.substring(2);
+        }
+        if (simplified.endsWith(".*") && !isEscaped(simplified, simplified.length() - 2)) {
+            simplified = simplified.substring(0, simplified.length() - 2);
+        }
+        return simplified;
+    }
+
+    /** Describes the constructs in {@code regex} that can make matching take exponential or polynomial time. */
+    static List<String> risks(String regex) {
+        List<String> risks = new ArrayList<>();
+        // One entry per open group: whether it contains an unbounded quantifier.
+        Deque<boolean[]> groups = new ArrayDeque<>();
+        groups.push(new boolean[1]);
+        int wildcards = 0;
+        boolean nested = false;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '\\' -> {
+                    if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+                        int end = regex.indexOf("\\E", i + 2);
+                        i = end < 0 ? regex.length() : end + 1;
+                    } else {
+                        i++;
+                    }
+                }
+                case '[' -> i = endOfClass(regex, i);
+                case '(' -> {
+                    groups.push(new boolean[1]);
+                    // Skip the ?: of non-capturing, lookaround and flag groups, so it is not taken
+                    // for a quantifier.
+                    if (i + 1 < regex.length() && regex.charAt(i + 1) == '?') {
+                        i++;
+                    }
+                }
+                case ')' -> {
+                    boolean[] group = groups.size() > 1 ? groups.pop() : new boolean[1];
+                    if (group[0] && isRepetition(regex, i + 1)) {
+                        nested = true;
+                    }
+                    groups.peek()[0] |= group[0] || isUnboundedQuantifier(regex, i + 1);
+                }
+                case '*', '+' -> {
+                    if (i > 0 && regex.charAt(i - 1) == '.' && !isEscaped(regex, i - 1)) {
+                        wildcards++;
+                    }
+                    groups.peek()[0] = true;
+                }
+                case '{' -> groups.peek()[0] |= isUnboundedQuantifier(regex, i);
+                default -> {}
+            }
+        }
+        if (nested) {
+            risks.add("repeats a group that itself contains an unbounded quantifier, "
+                + "which can take exponential or high polynomial time on near-matches");
+        }
+        if (wildcards > 1) {
+            risks.add("contains " + wildcards + " unbounded wildcards (.* or .+), "
+                + "which can take polynomial time on long values");
+        }
+        return risks;
+    }
+
+    /** Whether a quantifier at {@code i} can repeat the preceding atom more than once. */
+    private static boolean isRepetition(String regex, int i) {
+        if (isUnboundedQuantifier(regex, i)) {
+            return true;
+        }
+        if (i >= regex.length() || regex.charAt(i) != '{') {
+            return false;
+        }
+        int close = regex.indexOf('}', i);
+        if (close < 0) {
+            return false;
+        }
+        String[] bounds = regex.substring(i + 1, close).split(",");
+        String max = bounds[bounds.length - 1].strip();
+        return max.matches("\\d+") && Integer.parseInt(max) > 1;
+    }
+
+    private static boolean isUnboundedQuantifier(String regex, int i) {
+        if (i >= regex.length()) {
+            return false;
+        }
+        char c = regex.charAt(i);
+        if (c == '*' || c == '+') {
+            return true;
+        }
+        if (c != '{') {
+            return false;
+        }
+        int close = regex.indexOf('}', i);
+        return close > 0 && regex.substring(i + 1, close).matches("\\d+,");
+    }
+
+    /** Returns the index of the ']' that closes the class opened at {@code open}. */
+    private static int endOfClass(String regex, int open) {
+        int depth = 0;
+        for (int i = open; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                depth++;
+                // A ']' right after the opening bracket (or [^) is a literal.
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == '^') {
+                    i++;
+                }
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == ']') {
+                    i++;
+                }
+            } else if (c == ']' && --depth == 0) {
+                return i;
+            }
+        }
+        return regex.length();
+    }
+
+    private static boolean isEscaped(String regex, int index) {
+        int backslashes = 0;
+        for (int i = index - 1; i >= 0 && regex.charAt(i) == '\\'; i--) {
+            backslashes++;
+        }
+        return backslashes % 2 == 1;
+    }
+
+    private static boolean hasCommentsFlag(String regex) {
+        return regex.matches("(?s).*\\(\\?[a-zA-Z-]*x.*");
+    }
+}
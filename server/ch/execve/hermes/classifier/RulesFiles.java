@@ -0,0 +1,49 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes.classifier;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** Reads the JSON rules files of the classifiers. Comments starting with {@code #} are allowed. */
+final class RulesFiles {
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(JsonParser.Feature.ALLOW_YAML_COMMENTS);
+
+    private RulesFiles() {}
+
+    static <T> T read(String rulesPath, Class<T> type) {
+        try {
+            return MAPPER.readValue(Files.readAllBytes(Path.of(rulesPath)), type);
+        } catch (IOException e) {
+            throw error(rulesPath, e);
+        }
+    }
+
+    static <T> T read(String rulesPath, TypeReference<T> type) {
+        try {
+            return MAPPER.readValue(Files.readAllBytes(Path.of(rulesPath)), type);
+        } catch (IOException e) {
+            throw error(rulesPath, e);
+        }
+    }
+
+    private static IllegalArgumentException error(String rulesPath, IOException e) {
+        return new IllegalArgumentException("Could not read or parse JSON rules file: " + rulesPath, e);
+    }
+}
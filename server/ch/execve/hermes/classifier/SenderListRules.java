@@ -0,0 +1,32 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes.classifier;
+
+import java.util.List;
+
+/**
+ * The configuration of a {@link SenderMatcher}: the list file, relative to the rules file, and the
+ * headers whose addresses are looked up in it.
+ */
+public record SenderListRules(String list, List<String> headers) {
+    public static final List<String> DEFAULT_HEADERS = List.of("From", "Return-Path", "Sender");
+
+    public SenderListRules {
+        if (list == null || list.isBlank()) {
+            throw new IllegalArgumentException("A sender list needs a \"list\" file");
+        }
+        headers = headers == null ? DEFAULT_HEADERS : List.copyOf(headers);
+    }
+}
@@ -0,0 +1,215 @@
+// Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package ch.execve.hermes.classifier;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Matches messages whose sender is on a list of addresses and domains, e.g. a blocklist with
+ * hundreds of thousands of entries.
+ *
+ * <p>The list is a plain text file with one entry per line: an address ({@code user@example.org})
+ * or a domain ({@code example.org}), which also covers its subdomains. It is compiled into a
+ * memory-mapped {@link HashIndex} next to it ({@code <list>.idx}), so lookups take a few memory
+ * reads regardless of the list size and the entries stay off the heap. The index is reused across
+ * restarts while the list is unchanged, and rebuilt in the background when the list changes.
+ */
+public class SenderMatcher implements Classifier {
+    private static final Logger logger = LoggerFactory.getLogger(SenderMatcher.class);
+    // How often the list file is checked for changes.
+    private static final long RELOAD_CHECK_NANOS = 1_000_000_000L;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+    private final Path list;
+    private final Path indexFile;
+    private final ImmutableSet<String> headers;
+    private volatile HashIndex index;
+    private volatile long lastCheck = System.nanoTime();
+    private final AtomicBoolean reloading = new AtomicBoolean();
+
+    public SenderMatcher(String rulesPath) {
+        this(RulesFiles.read(rulesPath, SenderListRules.class), Path.of(rulesPath).toAbsolutePath().getParent());
+    }
+
+    /** Builds a matcher whose list path is resolved against {@code baseDir}. */
+    public SenderMatcher(SenderListRules rules, Path baseDir) {
+        this.list = baseDir.resolve(rules.list());
+        this.headers = rules.headers().stream()
+            .map(h -> h.toLowerCase(Locale.ROOT))
+            .collect(ImmutableSet.toImmutableSet());
+        try {
+            this.indexFile = indexFileFor(list);
+            this.index = HashIndex.open(list, indexFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not index sender list " + list, e);
+        }
+        logger.info("Successfully loaded {} sender list entries from {}", index.size(), list);
+    }
+
+    /**
+     * Next to the list if possible; otherwise, e.g. in a read-only config, in a directory under the temp
+     * directory that only the current user can access.
+     */
+    private static Path indexFileFor(Path list) throws IOException {
+        Path absolute = list.toAbsolutePath();
+        if (Files.isWritable(absolute.getParent())) {
+            return list.resolveSibling(list.getFileName() + ".idx");
+        }
+        String name = list.getFileName() + "-"
+            + Hashing.sha256().hashString(absolute.toString(), StandardCharsets.UTF_8).toString().substring(0, 16)
+            + ".idx";
+        return privateIndexDirectory().resolve(name);
+    }
+
+    private static Path privateIndexDirectory() throws IOException {
+        String user = System.getProperty("user.name");
+        Path dir = Path.of(System.getProperty("java.io.tmpdir"), "hermes-" + user);
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return Files.createDirectories(dir);
+        }
+        try {
+            Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        } catch (FileAlreadyExistsException e) {
+            // Reused across restarts, but only if it is still ours and private; see below.
+        }
+        UserPrincipal self = dir.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(user);
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)
+            || !Files.getOwner(dir, LinkOption.NOFOLLOW_LINKS).equals(self)
+            || !Files.getPosixFilePermissions(dir, LinkOption.NOFOLLOW_LINKS).equals(OWNER_ONLY)) {
+            throw new IOException(dir + " is not a directory private to " + user);
+        }
+        return dir;
+    }
+
+    @Override
+    public boolean classify(Message email) {
+        try {
+            return classify(ParsedMessage.of(email));
+        } catch (MessagingException e) {
+            logger.warn("Could not read headers from email", e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean classify(ParsedMessage email) {
+        reloadIfChanged();
+        HashIndex current = index;
+        for (String header : headers) {
+            for (String value : email.headers(header)) {
+                for (String address : addresses(value)) {
+                    if (!address.isEmpty() && listed(current, address)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Looks up the address, then its domain and each parent domain. */
+    private static boolean listed(HashIndex index, String address) {
+        if (index.contains(address)) {
+            return true;
+        }
+        int at = address.lastIndexOf('@');
+        String domain = at < 0 ? address : address.substring(at + 1);
+        while (!domain.isEmpty()) {
+            if (index.contains(domain)) {
+                return true;
+            }
+            int dot = domain.indexOf('.');
+            if (dot < 0) {
+                break;
+            }
+            domain = domain.substring(dot + 1);
+        }
+        return false;
+    }
+
+    private static String[] addresses(String value) {
+        try {
+            InternetAddress[] parsed = InternetAddress.parseHeader(value, false);
+            String[] addresses = new String[parsed.length];
+            for (int i = 0; i < parsed.length; i++) {
+                String address = parsed[i].getAddress();
+                addresses[i] = address == null ? "" : HashIndex.normalize(address);
+            }
+            return addresses;
+        } catch (AddressException e) {
+            return new String[0];
+        }
+    }
+
+    /** Starts rebuilding the index in the background if the list changed; until then the old one is used. */
+    private void reloadIfChanged() {
+        long now = System.nanoTime();
+        if (now - lastCheck < RELOAD_CHECK_NANOS || !reloading.compareAndSet(false, true)) {
+            return;
+        }
+        lastCheck = now;
+        Thread.ofVirtual().name("hermes-sender-list-reload").start(() -> {
+            try {
+                if (!index.builtFrom(Files.size(list), Files.getLastModifiedTime(list).toMillis())) {
+                    long start = System.nanoTime();
+                    index = HashIndex.open(list, indexFile);
+                    logger.info(
+                        "Reloaded {} sender list entries from {} in {} ms",
+                        index.size(), list, (System.nanoTime() - start) / 1_000_000);
+                }
+            } catch (IOException e) {
+                logger.error("Could not reload sender list {}, keeping the old one", list, e);
+            } finally {
+                reloading.set(false);
+            }
+        });
+    }
+
+    @Override
+    public boolean needsBody() {
+        return false;
+    }
+
+    /**
+     * Empty, even though only the configured headers are read: the list can change underneath a cached
+     * result, so results must not be reused.
+     */
+    @Override
+    public Optional<ImmutableSet<String>> referencedHeaders() {
+        return Optional.empty();
+    }
+}
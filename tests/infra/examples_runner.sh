@@ -0,0 +1,38 @@
+#!/bin/sh
+
+# Copyright 2025 Paweł Zuzelski <pawelz@execve.ch>
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+CASES_FILE=$1
+HERMES_EXAMPLES_BIN=$2
+CONFIG_BUILD_FILE=$3
+EXTRA_CLASS_PATH_JARS=$4
+
+# Derive the config directory from the path of its BUILD file.
+CONFIG_DIR=$(dirname "$CONFIG_BUILD_FILE")
+
+set -- --config-dir "$CONFIG_DIR" --cases "$CASES_FILE" --log-file "$TEST_TMPDIR/hermes.log"
+if [ -n "$EXTRA_CLASS_PATH_JARS" ]; then
+  # A space-separated list of JARs, turned into a class path.
+  set -- "$@" --wrapper_script_flag=--main_advice_classpath="$(echo "$EXTRA_CLASS_PATH_JARS" | tr ' ' ':')"
+fi
+
+# Exits with 1 if an example fails and with 2 if the configuration is broken.
+"$HERMES_EXAMPLES_BIN" "$@"
+status=$?
+if [ "$status" != "0" ] && [ -f "$TEST_TMPDIR/hermes.log" ]; then
+  echo "--- Log ---"
+  cat "$TEST_TMPDIR/hermes.log"
+fi
+exit $status
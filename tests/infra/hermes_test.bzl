@@ -2,7 +2,7 @@
 
 load("@rules_shell//shell:sh_test.bzl", "sh_test")
 
-def hermes_test(name, result, data, config = "@hermes//tests/config", deps = []):
+def hermes_test(name, result, data, config = "@hermes//tests/config", deps = [], server_delivery = None):
     """
     A macro that creates a hermes integration test.
 
@@ -12,6 +12,8 @@ def hermes_test(name, result, data, config = "@hermes//tests/config", deps = [])
       data: A filegroup containing the email files for this test.
       config: The label of the configuration filegroup to use.
       deps: A list of extra Java dependencies (e.g., custom classifiers).
+      server_delivery: If set, the server delivers the emails itself with this fsync policy
+        ("none", "each" or "batch") instead of leaving it to the client.
     """
 
     # 1. Generate the cases.txt file using a genrule.
@@ -44,9 +46,68 @@ def hermes_test(name, result, data, config = "@hermes//tests/config", deps = [])
         # $(locations) expands to a space-separated list of file paths.
         test_args.append("$(locations %s)" % " ".join(deps))
 
+    env = {}
+    if server_delivery:
+        env["HERMES_SERVER_DELIVERY"] = server_delivery
+
     sh_test(
         name = name,
         srcs = ["@hermes//tests/infra:test_runner.sh"],
         data = test_data,
         args = test_args,
+        env = env,
+    )
+
+def hermes_examples_test(name, positive = {}, negative = {}, config = "@hermes//tests/config", deps = []):
+    """
+    A macro that checks a configuration against example messages, in process.
+
+    Unlike hermes_test, no server is started: all examples are classified by a single JVM that
+    loads the configuration once, and a configuration that cannot be loaded fails the test at once.
+
+    Args:
+      name: The name of the test.
+      positive: A dict from classifier name to a filegroup of messages it must match.
+      negative: A dict from classifier name to a filegroup of messages it must not match.
+      config: The label of the configuration filegroup to use.
+      deps: A list of extra Java dependencies (e.g., custom classifiers).
+    """
+
+    # One "path classifier positive|negative" line per message.
+    cases_file_name = name + "_cases.txt"
+    examples_data = []
+    for data in positive.values() + negative.values():
+        if data not in examples_data:
+            examples_data.append(data)
+    commands = []
+    for kind, examples in [("positive", positive), ("negative", negative)]:
+        for classifier, data in examples.items():
+            commands.append("for f in $(locations %s); do echo \"$$f %s %s\"; done >> $@" % (data, classifier, kind))
+    native.genrule(
+        name = name + "_cases_generator",
+        srcs = examples_data,
+        outs = [cases_file_name],
+        cmd = "\n".join(["touch $@"] + commands),
+    )
+
+    test_data = [
+        cases_file_name,
+        "@hermes//server/ch/execve/hermes:hermes_examples",
+        config,
+        "%s:BUILD" % config.rsplit(":", 1)[0],
+    ] + examples_data + deps
+    test_args = [
+        "$(location %s)" % cases_file_name,
+        "$(location @hermes//server/ch/execve/hermes:hermes_examples)",
+        "$(location %s:BUILD)" % config.rsplit(":", 1)[0],
+    ]
+
+    if deps:
+        test_args.append("$(locations %s)" % " ".join(deps))
+
+    sh_test(
+        name = name,
+        srcs = ["@hermes//tests/infra:examples_runner.sh"],
+        data = test_data,
+        args = test_args,
     )
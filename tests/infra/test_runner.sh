@@ -42,6 +42,12 @@ LOG_PATH="$TMPDIR/hermes.log"
 # Derive the config directory from the path of its BUILD file.
 CONFIG_DIR=$(dirname "$CONFIG_BUILD_FILE")
 
+# Optional server-side delivery, set by the hermes_test macro.
+SERVER_DELIVERY_ARGS=""
+if [ -n "$HERMES_SERVER_DELIVERY" ]; then
+  SERVER_DELIVERY_ARGS="--maildir-path $MAILDIR_PATH --fsync-policy $HERMES_SERVER_DELIVERY"
+fi
+
 echo "Starting server..."
 if [ -n "$EXTRA_CLASS_PATH_JARS" ]; then
   # The fifth argument is a space-separated list of JARs.
@@ -53,6 +59,7 @@ if [ -n "$EXTRA_CLASS_PATH_JARS" ]; then
     --database-path "$DB_PATH" \
     --log-file "$LOG_PATH" \
     --config-dir "$CONFIG_DIR" \
+    $SERVER_DELIVERY_ARGS \
     --wrapper_script_flag=--main_advice_classpath="$EXTRA_CLASS_PATH" &
 else
   # Start the server normally.
@@ -60,7 +67,8 @@ else
     --socket-path "$SOCKET_PATH" \
     --database-path "$DB_PATH" \
     --log-file "$LOG_PATH" \
-    --config-dir "$CONFIG_DIR" &
+    --config-dir "$CONFIG_DIR" \
+    $SERVER_DELIVERY_ARGS &
 fi
 
 SERVER_PID=$!